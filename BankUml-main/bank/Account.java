@@ -1,38 +1,175 @@
 package bank;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Getter
 @Setter
 public abstract class Account {
 
+    private static final VarHandle BALANCE;
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balanceCents", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     protected String accountNumber;
     protected Customer customer;
-    protected double balance;
+    // In cents, and only changed through BALANCE (compare-and-set), so deposits and
+    // withdrawals on many threads need no lock and can't lose each other's updates
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile long balanceCents;
     protected AccountType type;
     protected String status; // ACTIVE or FROZEN
     protected boolean cardStolen;
     protected List<Transaction> transactions;
 
+    // Set when balance and status live in a memory-mapped table (bank.accounts.format=mapped);
+    // the three fields above are then unused
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private MappedAccountTable table;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int slot = -1;
+
+    // Row in DatabaseManager's AccountColumns, which this account keeps current. Unused for
+    // table-backed accounts: MappedAccountTable keeps the columns current itself.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private AccountColumns columns;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int columnRow = -1;
+
+    // True while the account has changes DatabaseManager hasn't written out yet.
+    // New accounts start dirty; loaders mark them clean.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean dirty = true;
+
     public Account(Customer customer, AccountType type) {
         this.customer = customer;
         this.type = type;
-        this.balance = 0.0;
         this.status = "ACTIVE";
         this.cardStolen = false;
-        this.transactions = new ArrayList<>();
+        this.transactions = Collections.synchronizedList(new ArrayList<>());
     }
 
     public Account(Customer customer, AccountType type, double initialBalance) {
         this.customer = customer;
         this.type = type;
-        this.balance = initialBalance;
+        this.balanceCents = Money.cents(initialBalance);
         this.status = "ACTIVE";
         this.cardStolen = false;
-        this.transactions = new ArrayList<>();
+        this.transactions = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    // Make this a view of the table's slot
+    void attach(MappedAccountTable table, int slot) {
+        this.table = table;
+        this.slot = slot;
+    }
+
+    boolean isAttached() {
+        return table != null;
+    }
+
+    // From now on, write balance and status changes into the columns' row too
+    void attachColumns(AccountColumns columns, int row) {
+        this.columns = columns;
+        this.columnRow = row;
+        columns.setCents(row, balanceCents);
+        columns.setStatus(row, AccountColumns.status(status));
+    }
+
+    // The row in AccountColumns, or -1
+    int columnRow() {
+        return columnRow;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    void markClean() {
+        dirty = false;
+    }
+
+    public double getBalance() {
+        return getBalanceCents() / 100.0;
+    }
+
+    public long getBalanceCents() {
+        return table != null ? table.getCents(slot) : balanceCents;
+    }
+
+    public void setBalance(double balance) {
+        setBalanceCents(Money.cents(balance));
+    }
+
+    public void setBalanceCents(long cents) {
+        dirty = true;
+        if (table != null) {
+            table.setCents(slot, cents);
+        } else {
+            long old = (long) BALANCE.getAndSet(this, cents);
+            if (columns != null) columns.addCents(columnRow, cents - old);
+        }
+    }
+
+    // Replace the balance only if it is still 'expected'; false if another update got there first
+    public boolean compareAndSetBalanceCents(long expected, long cents) {
+        boolean set = table != null
+                ? table.compareAndSetCents(slot, expected, cents)
+                : BALANCE.compareAndSet(this, expected, cents);
+        if (set) {
+            dirty = true;
+            if (table == null && columns != null) columns.addCents(columnRow, cents - expected);
+        }
+        return set;
+    }
+
+    public String getStatus() {
+        if (table == null) return status;
+        return (table.getFlags(slot) & BinaryAccountStore.FROZEN) != 0 ? "FROZEN" : "ACTIVE";
+    }
+
+    public void setStatus(String status) {
+        dirty = true;
+        if (table != null) {
+            table.setFlag(slot, BinaryAccountStore.FROZEN, "FROZEN".equals(status));
+        } else {
+            this.status = status;
+            if (columns != null) columns.setStatus(columnRow, AccountColumns.status(status));
+        }
+    }
+
+    public boolean isCardStolen() {
+        return table != null ? (table.getFlags(slot) & BinaryAccountStore.CARD_STOLEN) != 0 : cardStolen;
+    }
+
+    public void setCardStolen(boolean cardStolen) {
+        dirty = true;
+        if (table != null) {
+            table.setFlag(slot, BinaryAccountStore.CARD_STOLEN, cardStolen);
+        } else {
+            this.cardStolen = cardStolen;
+        }
     }
 
     // Add a transaction
@@ -42,18 +179,36 @@ public abstract class Account {
 
     // Balance update
     public void updateBalance(double delta) {
-        this.balance += delta;
+        addCents(Money.cents(delta));
+    }
+
+    // Atomically add to the balance; returns the new balance
+    public long addCents(long delta) {
+        dirty = true;
+        if (table != null) return table.addCents(slot, delta);
+        if (columns != null) columns.addCents(columnRow, delta);
+        return (long) BALANCE.getAndAdd(this, delta) + delta;
+    }
+
+    // Take 'cents' off the balance if it covers them. The funds check and the debit are
+    // one compare-and-set, so two withdrawals can't both spend the same money.
+    public boolean tryDebit(long cents) {
+        while (true) {
+            long balance = getBalanceCents();
+            if (balance < cents) return false;
+            if (compareAndSetBalanceCents(balance, balance - cents)) return true;
+        }
     }
 
     // Freeze and unfreeze
     public void freezeAccount() {
-        this.status = "FROZEN";
-        this.cardStolen = true;
+        setStatus("FROZEN");
+        setCardStolen(true);
     }
 
     public void unfreezeAccount() {
-        this.status = "ACTIVE";
-        this.cardStolen = false;
+        setStatus("ACTIVE");
+        setCardStolen(false);
     }
 
     // info display
@@ -62,8 +217,8 @@ public abstract class Account {
         System.out.println("Account Number: " + accountNumber);
         System.out.println("Account Type: " + type);
         System.out.println("Owner: " + customer.getName());
-        System.out.println("Balance: $" + String.format("%.2f", balance));
-        System.out.println("Status: " + status);
+        System.out.println("Balance: $" + Money.format(getBalanceCents()));
+        System.out.println("Status: " + getStatus());
         System.out.println("Transactions: " + transactions.size());
         System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
     }
@@ -0,0 +1,215 @@
+package bank;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Column-oriented copy of every account's balance (cents), type, status and owner, kept by
+// DatabaseManager for bank-wide reports: totals by AccountType, the sum of frozen balances,
+// a customer's total. Aggregates are loops over primitive arrays, with no Account objects
+// touched and nothing allocated per account; above PARALLEL_THRESHOLD rows the chunks are
+// summed on all cores.
+//
+// Every account has a row for life. Accounts on the heap write their new balance and status
+// into their row as they change (Account.attachColumns); with the mapped table the row is
+// the slot and MappedAccountTable keeps it current. Rows are stored in CHUNK_SIZE chunks
+// that are never moved, so growing the columns can't lose a concurrent write. Readers are
+// not synchronized with writers: a report running during updates may miss the newest ones.
+public class AccountColumns {
+
+    public static final byte ACTIVE = 0;
+    public static final byte FROZEN = 1;
+
+    private static final VarHandle CENTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    // Replaced (chunks copied by reference) when a chunk is added
+    private volatile long[][] cents = new long[0][];
+    private volatile byte[][] types = new byte[0][];
+    private volatile byte[][] statuses = new byte[0][];
+    private volatile int[][] customerIds = new int[0][];
+    private volatile int size;
+
+    public static byte status(String status) {
+        return "FROZEN".equals(status) ? FROZEN : ACTIVE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // A new row at the end; returns its number
+    public synchronized int add(int customerId, AccountType type, long balanceCents, byte status) {
+        int row = size;
+        put(row, customerId, type, balanceCents, status);
+        return row;
+    }
+
+    // Fill a given row, growing the columns to include it
+    public synchronized void put(int row, int customerId, AccountType type, long balanceCents, byte status) {
+        while (row >= cents.length * CHUNK_SIZE) {
+            int chunks = cents.length + 1;
+            long[][] c = Arrays.copyOf(cents, chunks);
+            byte[][] t = Arrays.copyOf(types, chunks);
+            byte[][] s = Arrays.copyOf(statuses, chunks);
+            int[][] ids = Arrays.copyOf(customerIds, chunks);
+            c[chunks - 1] = new long[CHUNK_SIZE];
+            t[chunks - 1] = new byte[CHUNK_SIZE];
+            s[chunks - 1] = new byte[CHUNK_SIZE];
+            ids[chunks - 1] = new int[CHUNK_SIZE];
+            types = t;
+            statuses = s;
+            customerIds = ids;
+            cents = c;
+        }
+
+        int chunk = row >>> CHUNK_BITS;
+        int i = row & CHUNK_MASK;
+        cents[chunk][i] = balanceCents;
+        types[chunk][i] = (byte) type.ordinal();
+        statuses[chunk][i] = status;
+        customerIds[chunk][i] = customerId;
+        if (row >= size) size = row + 1;
+    }
+
+    public void setCents(int row, long balanceCents) {
+        CENTS.setVolatile(cents[row >>> CHUNK_BITS], row & CHUNK_MASK, balanceCents);
+    }
+
+    public void addCents(int row, long delta) {
+        CENTS.getAndAdd(cents[row >>> CHUNK_BITS], row & CHUNK_MASK, delta);
+    }
+
+    public void setStatus(int row, byte status) {
+        statuses[row >>> CHUNK_BITS][row & CHUNK_MASK] = status;
+    }
+
+    public long getCents(int row) {
+        return (long) CENTS.getVolatile(cents[row >>> CHUNK_BITS], row & CHUNK_MASK);
+    }
+
+    // --- Aggregates ---
+
+    public long totalCents() {
+        return sum(-1, -1);
+    }
+
+    public long totalCents(AccountType type) {
+        return sum(type.ordinal(), -1);
+    }
+
+    // Sum of the balances of accounts with this status (ACTIVE or FROZEN)
+    public long totalCentsWithStatus(byte status) {
+        return sum(-1, status);
+    }
+
+    public long totalCents(AccountType type, byte status) {
+        return sum(type.ordinal(), status);
+    }
+
+    // Totals indexed by AccountType ordinal, in one pass
+    public long[] totalCentsByType() {
+        int chunkCount = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        int typeCount = AccountType.values().length;
+        if (size < PARALLEL_THRESHOLD) {
+            long[] totals = new long[typeCount];
+            for (int c = 0; c < chunkCount; c++) {
+                sumByType(c, totals);
+            }
+            return totals;
+        }
+        return IntStream.range(0, chunkCount).parallel()
+                .mapToObj(c -> sumByType(c, new long[typeCount]))
+                .reduce(new long[typeCount], AccountColumns::addAll);
+    }
+
+    public int count(AccountType type, byte status) {
+        int chunkCount = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        int t = type == null ? -1 : type.ordinal();
+        int n = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            byte[] ts = types[c];
+            byte[] ss = statuses[c];
+            int rows = rowsIn(c);
+            for (int i = 0; i < rows; i++) {
+                if ((t < 0 || ts[i] == t) && ss[i] == status) n++;
+            }
+        }
+        return n;
+    }
+
+    // Total of one customer's accounts (a scan of the customer id column)
+    public long customerCents(int customerId) {
+        int chunkCount = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        long total = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            long[] cs = cents[c];
+            int[] ids = customerIds[c];
+            int rows = rowsIn(c);
+            for (int i = 0; i < rows; i++) {
+                if (ids[i] == customerId) total += cs[i];
+            }
+        }
+        return total;
+    }
+
+    // type and status are -1 for "any"
+    private long sum(int type, int status) {
+        int chunkCount = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        if (size < PARALLEL_THRESHOLD) {
+            long total = 0;
+            for (int c = 0; c < chunkCount; c++) {
+                total += sumChunk(c, type, status);
+            }
+            return total;
+        }
+        return IntStream.range(0, chunkCount).parallel().mapToLong(c -> sumChunk(c, type, status)).sum();
+    }
+
+    private long sumChunk(int chunk, int type, int status) {
+        long[] cs = cents[chunk];
+        int rows = rowsIn(chunk);
+        long total = 0;
+
+        if (type < 0 && status < 0) {
+            for (int i = 0; i < rows; i++) {
+                total += cs[i];
+            }
+            return total;
+        }
+
+        byte[] ts = types[chunk];
+        byte[] ss = statuses[chunk];
+        for (int i = 0; i < rows; i++) {
+            if ((type < 0 || ts[i] == type) && (status < 0 || ss[i] == status)) total += cs[i];
+        }
+        return total;
+    }
+
+    private long[] sumByType(int chunk, long[] totals) {
+        long[] cs = cents[chunk];
+        byte[] ts = types[chunk];
+        int rows = rowsIn(chunk);
+        for (int i = 0; i < rows; i++) {
+            totals[ts[i]] += cs[i];
+        }
+        return totals;
+    }
+
+    private static long[] addAll(long[] a, long[] b) {
+        long[] sum = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            sum[i] = a[i] + b[i];
+        }
+        return sum;
+    }
+
+    private int rowsIn(int chunk) {
+        return Math.min(CHUNK_SIZE, size - (chunk << CHUNK_BITS));
+    }
+}
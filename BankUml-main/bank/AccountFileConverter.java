@@ -0,0 +1,80 @@
+package bank;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+// Converts account data between accounts.csv and the binary accounts.dat / customers.dat.
+// Only the files are converted: fold pending accounts.log changes in first (start the app
+// once, or call DatabaseManager.checkpoint()).
+//
+// Run:
+//   java -cp ".:libs/*" bank.AccountFileConverter to-binary [accounts.csv accounts.dat customers.dat]
+//   java -cp ".:libs/*" bank.AccountFileConverter to-csv    [accounts.dat customers.dat accounts.csv]
+public class AccountFileConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+
+        long start = System.nanoTime();
+        int accounts;
+
+        switch (args[0]) {
+            case "to-binary": {
+                String csv = arg(args, 1, "accounts.csv");
+                String accountsDat = arg(args, 2, "accounts.dat");
+                String customersDat = arg(args, 3, "customers.dat");
+
+                List<Customer> customers = sorted(new ParallelAccountLoader(csv).load());
+                BinaryAccountStore.write(customers, Paths.get(accountsDat), Paths.get(customersDat));
+                accounts = countAccounts(customers);
+                System.out.println("Wrote " + accountsDat + " and " + customersDat + " from " + csv);
+                break;
+            }
+            case "to-csv": {
+                String accountsDat = arg(args, 1, "accounts.dat");
+                String customersDat = arg(args, 2, "customers.dat");
+                String csv = arg(args, 3, "accounts.csv");
+
+                List<Customer> customers;
+                try (BinaryAccountStore store = new BinaryAccountStore(accountsDat, customersDat)) {
+                    customers = sorted(store.load());
+                }
+                CsvAccountStore.writeCsv(csv, customers);
+                accounts = countAccounts(customers);
+                System.out.println("Wrote " + csv + " from " + accountsDat + " and " + customersDat);
+                break;
+            }
+            default:
+                usage();
+                return;
+        }
+
+        System.out.printf("%d accounts in %d ms%n", accounts, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static String arg(String[] args, int i, String fallback) {
+        return args.length > i ? args[i] : fallback;
+    }
+
+    // Customers in id order so converted files are stable
+    private static List<Customer> sorted(Map<String, Customer> customers) {
+        List<Customer> list = new ArrayList<>(customers.values());
+        list.sort(Comparator.comparingInt(Customer::getCustomerId));
+        return list;
+    }
+
+    private static int countAccounts(List<Customer> customers) {
+        int n = 0;
+        for (Customer c : customers) n += c.getAccounts().size();
+        return n;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: AccountFileConverter to-binary [accounts.csv accounts.dat customers.dat]");
+        System.out.println("       AccountFileConverter to-csv [accounts.dat customers.dat accounts.csv]");
+    }
+}
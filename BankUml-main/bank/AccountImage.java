@@ -0,0 +1,335 @@
+package bank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Fast-start image of every customer and account (accounts.img), so a cold start does not
+// have to reparse accounts.csv row by row. CsvAccountStore writes it at every checkpoint and
+// at clean shutdown, and loads it instead of accounts.csv when it is intact, replaying only
+// the log records after the image's LSN.
+//
+// Layout (version 1, big-endian), written as a SnapshotFile so every block is checksummed:
+//   header   int magic "BKIM", short version, long lsn, long csvLength, long csvModified,
+//            int customerCount
+//   sections SECTION_CUSTOMERS customers each:
+//            customer  int id, str name, str password, int accountCount, then its accounts
+//            account   str accountNumber, byte type, double balance, str status
+//   table    int sectionCount, then per section long offset, int customerCount
+//   footer   long tableOffset, int magic
+// where str is an unsigned short byte count followed by UTF-8 bytes.
+//
+// Loading checks the checksums in one sequential pass, then decodes the sections in parallel
+// with large positional reads, like ParallelAccountLoader does with CSV chunks.
+//
+// csvLength/csvModified describe accounts.csv when the image was written. If accounts.csv
+// has changed since (restored from a backup, edited, converted), the image is ignored.
+public class AccountImage {
+
+    static final int MAGIC = 0x424B494D; // "BKIM"
+    static final short VERSION = 1;
+
+    private static final int SECTION_CUSTOMERS = 1 << 16;
+    private static final int FOOTER_SIZE = 12;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final SnapshotFile file;
+    private final int parallelism;
+
+    // What read() found. The account map is only built if something asks for it.
+    public static class Loaded {
+        public final Map<String, Customer> customers;
+        public final long lsn;
+        private Map<String, Account> accounts;
+
+        Loaded(Map<String, Customer> customers, long lsn) {
+            this.customers = customers;
+            this.lsn = lsn;
+        }
+
+        public Map<String, Account> accounts() {
+            if (accounts == null) {
+                accounts = new HashMap<>();
+                for (Customer customer : customers.values()) {
+                    for (Account acc : customer.getAccounts()) {
+                        accounts.put(acc.getAccountNumber(), acc);
+                    }
+                }
+            }
+            return accounts;
+        }
+    }
+
+    public AccountImage(String file) {
+        this(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AccountImage(String file, int parallelism) {
+        this.file = new SnapshotFile(file);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public void write(Collection<Customer> customers, long lsn, Path csv) throws IOException {
+        long csvLength = Files.exists(csv) ? Files.size(csv) : -1;
+        long csvModified = Files.exists(csv) ? Files.getLastModifiedTime(csv).toMillis() : -1;
+
+        file.write(stream -> {
+            CountingStream counter = new CountingStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(counter);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(lsn);
+            out.writeLong(csvLength);
+            out.writeLong(csvModified);
+            out.writeInt(customers.size());
+
+            List<long[]> sections = new ArrayList<>();   // {offset, customers}
+            for (Customer c : customers) {
+                if (sections.isEmpty() || sections.get(sections.size() - 1)[1] == SECTION_CUSTOMERS) {
+                    sections.add(new long[]{counter.count, 0});
+                }
+                sections.get(sections.size() - 1)[1]++;
+
+                List<Account> accounts = c.getAccounts();
+                out.writeInt(c.getCustomerId());
+                writeString(out, c.getName());
+                writeString(out, c.getPassword());
+                out.writeInt(accounts.size());
+
+                for (Account acc : accounts) {
+                    writeString(out, acc.getAccountNumber());
+                    out.writeByte(acc.getType().ordinal());
+                    out.writeDouble(acc.getBalance());
+                    writeString(out, acc.getStatus());
+                }
+            }
+
+            long tableOffset = counter.count;
+            out.writeInt(sections.size());
+            for (long[] section : sections) {
+                out.writeLong(section[0]);
+                out.writeInt((int) section[1]);
+            }
+            out.writeLong(tableOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+        });
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IOException("Value too long for the account image");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    // The image, or null when there is none, it is damaged, or it does not match csv
+    public Loaded read(Path csv) {
+        Path path = file.getFile();
+        if (!Files.exists(path)) return null;
+
+        String problem = file.verify();
+        if (problem != null) {
+            System.out.println("Can't use " + path + ": " + problem);
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Reader header = new Reader(channel, 0, size);
+
+            if (header.getInt() != MAGIC) throw new IOException("not an account image");
+            short version = header.getShort();
+            if (version != VERSION) throw new IOException("unsupported image version " + version);
+
+            long lsn = header.getLong();
+            long csvLength = header.getLong();
+            long csvModified = header.getLong();
+            int customerCount = header.getInt();
+
+            if (Files.exists(csv) && (Files.size(csv) != csvLength
+                    || Files.getLastModifiedTime(csv).toMillis() != csvModified)) {
+                System.out.println(csv + " changed since " + path + " was written, ignoring the image");
+                return null;
+            }
+
+            Reader footer = new Reader(channel, size - FOOTER_SIZE, size);
+            long tableOffset = footer.getLong();
+            if (footer.getInt() != MAGIC || tableOffset < 0 || tableOffset > size - FOOTER_SIZE) {
+                throw new IOException("bad section table");
+            }
+
+            Reader table = new Reader(channel, tableOffset, size - FOOTER_SIZE);
+            int sectionCount = table.getInt();
+            List<Callable<List<Customer>>> tasks = new ArrayList<>();
+            long[] offsets = new long[sectionCount + 1];
+            int[] counts = new int[sectionCount];
+            for (int i = 0; i < sectionCount; i++) {
+                offsets[i] = table.getLong();
+                counts[i] = table.getInt();
+            }
+            offsets[sectionCount] = tableOffset;
+            for (int i = 0; i < sectionCount; i++) {
+                Reader section = new Reader(channel, offsets[i], offsets[i + 1]);
+                int count = counts[i];
+                tasks.add(() -> decode(section, count));
+            }
+
+            Map<String, Customer> customers = new HashMap<>(customerCount * 4 / 3 + 1);
+            for (List<Customer> section : run(tasks)) {
+                for (Customer customer : section) {
+                    customers.put(customer.getCustomerId() + "", customer);
+                }
+            }
+            return new Loaded(customers, lsn);
+
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Can't use " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private List<List<Customer>> run(List<Callable<List<Customer>>> tasks) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, Math.max(1, tasks.size())));
+        try {
+            List<List<Customer>> results = new ArrayList<>();
+            for (Future<List<Customer>> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<Customer> decode(Reader r, int customerCount) throws IOException {
+        List<Customer> customers = new ArrayList<>(customerCount);
+        AccountType[] types = AccountType.values();
+        Map<String, String> statuses = new HashMap<>();
+
+        for (int i = 0; i < customerCount; i++) {
+            int id = r.getInt();
+            Customer customer = new Customer(id, r.getString(), r.getString());
+
+            int accountCount = r.getInt();
+            for (int j = 0; j < accountCount; j++) {
+                String number = r.getString();
+                AccountType type = types[r.getByte()];
+                double balance = r.getDouble();
+                String status = statuses.computeIfAbsent(r.getString(), s -> s);
+
+                Account account = DatabaseManager.newAccount(customer, type, balance);
+                account.setAccountNumber(number);
+                account.setStatus(status);
+                customer.addAccount(account);
+            }
+            customers.add(customer);
+        }
+
+        if (!r.atEnd()) throw new IOException("section longer than its customers");
+        return customers;
+    }
+
+    // Decodes the byte range [start, end) of the file through a large buffer refilled with
+    // positional reads, so several readers can share one channel
+    private static class Reader {
+        private final FileChannel channel;
+        private final ByteBuffer buf;
+        private long position;
+        private final long end;
+
+        Reader(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.buf = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(0, end - start)));
+            buf.limit(0);
+        }
+
+        private void need(int n) throws IOException {
+            if (buf.remaining() >= n) return;
+            if (n > buf.capacity()) throw new IOException("value larger than its section");
+            buf.compact();
+            while (buf.position() < n) {
+                if (position >= end) throw new EOFException("image ends early");
+                int max = (int) Math.min(buf.remaining(), end - position);
+                ByteBuffer window = buf.duplicate();
+                window.limit(window.position() + max);
+                int r = channel.read(window, position);
+                if (r < 0) throw new EOFException("image ends early");
+                position += r;
+                buf.position(buf.position() + r);
+            }
+            buf.flip();
+        }
+
+        boolean atEnd() {
+            return !buf.hasRemaining() && position >= end;
+        }
+
+        byte getByte() throws IOException {
+            need(1);
+            return buf.get();
+        }
+
+        short getShort() throws IOException {
+            need(2);
+            return buf.getShort();
+        }
+
+        int getInt() throws IOException {
+            need(4);
+            return buf.getInt();
+        }
+
+        long getLong() throws IOException {
+            need(8);
+            return buf.getLong();
+        }
+
+        double getDouble() throws IOException {
+            need(8);
+            return buf.getDouble();
+        }
+
+        String getString() throws IOException {
+            int length = getShort() & 0xFFFF;
+            need(length);
+            String s = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+            return s;
+        }
+    }
+
+    // Tracks the offset for the section table
+    private static class CountingStream extends FilterOutputStream {
+        long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
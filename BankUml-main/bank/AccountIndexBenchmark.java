@@ -0,0 +1,86 @@
+package bank;
+
+import java.util.*;
+
+// Measures DatabaseManager.getAccountByNumber at growing account counts, each lookup for an
+// account drawn at random from all of them. The hash index does the same work per lookup
+// from 1k to 10M accounts; what still grows is memory latency, once the index and accounts
+// no longer fit in the CPU caches.
+//
+// Run (10M accounts needs a few GB of heap):
+//   java -Xmx6g -cp ".:libs/*" bank.AccountIndexBenchmark [size ...]
+public class AccountIndexBenchmark {
+
+    private static final int ACCOUNTS_PER_CUSTOMER = 3;
+    private static final int LOOKUPS = 2_000_000;
+
+    public static void main(String[] args) {
+        long[] sizes = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+        if (args.length > 0) {
+            sizes = new long[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Long.parseLong(args[i]);
+            }
+        }
+
+        System.out.printf("%-12s | %-12s | %s%n", "Accounts", "Lookups", "ns/lookup");
+        for (long size : sizes) {
+            run((int) size);
+        }
+    }
+
+    private static void run(int size) {
+        DatabaseManager db = new DatabaseManager(buildCustomers(size));
+
+        // One account number per lookup, drawn from the whole range and generated up front so
+        // only the lookup is timed. Not a repeated small set: that would stay in the CPU caches
+        // and hide how the lookup behaves at large sizes.
+        Random random = new Random(42);
+        String[] keys = new String[LOOKUPS];
+
+        // Warm up the JIT before timing
+        long found = 0;
+        fillKeys(keys, random, size);
+        for (String key : keys) {
+            if (db.getAccountByNumber(key) != null) found++;
+        }
+
+        fillKeys(keys, random, size);
+        long start = System.nanoTime();
+        for (String key : keys) {
+            if (db.getAccountByNumber(key) != null) found++;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (found != 2L * LOOKUPS) {
+            System.out.println("Lookup missed accounts at size " + size);
+        }
+
+        System.out.printf("%-12d | %-12d | %.1f%n", size, LOOKUPS, (double) elapsed / LOOKUPS);
+    }
+
+    private static void fillKeys(String[] keys, Random random, int size) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "ACC" + random.nextInt(size);
+        }
+    }
+
+    private static Map<String, Customer> buildCustomers(int size) {
+        Map<String, Customer> customers = new HashMap<>();
+        Customer customer = null;
+
+        for (int i = 0; i < size; i++) {
+            if (i % ACCOUNTS_PER_CUSTOMER == 0) {
+                int id = i / ACCOUNTS_PER_CUSTOMER + 1;
+                customer = new Customer(id, "Customer " + id, "pass" + id);
+                customers.put(id + "", customer);
+            }
+
+            Account acc = new Checking(customer, 100.0);
+            acc.setAccountNumber("ACC" + i);
+            customer.addAccount(acc);
+        }
+
+        return customers;
+    }
+}
@@ -0,0 +1,72 @@
+package bank;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Striped locks keyed by account number: a fixed table of -Dbank.lockStripes locks (1024 by
+// default) covers every account without a lock object per account. Two accounts may share a
+// stripe, which only costs concurrency.
+//
+// A single balance doesn't need them (Account changes it by compare-and-set); they are for
+// state that has to change together with a balance, like Checking's overdraft or the two legs
+// of a transfer (Transaction.applyBalances). Code that needs several
+// accounts at once takes their stripes with lockAll(), always in ascending stripe order, so
+// two callers locking the same accounts in opposite order can't deadlock.
+public class AccountLocks {
+
+    private static final AccountLocks INSTANCE = new AccountLocks(Integer.getInteger("bank.lockStripes", 1024));
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    AccountLocks(int stripeCount) {
+        int n = Integer.highestOneBit(Math.max(1, Math.min(stripeCount, 1 << 16)));
+        stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = n - 1;
+    }
+
+    public static AccountLocks getInstance() {
+        return INSTANCE;
+    }
+
+    public int stripeOf(String accountNumber) {
+        if (accountNumber == null) return 0;
+        int h = accountNumber.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public ReentrantLock lockFor(String accountNumber) {
+        return stripes[stripeOf(accountNumber)];
+    }
+
+    // Lock the stripes of every given account (nulls are skipped) in global order.
+    // Pass the result to unlock().
+    public ReentrantLock[] lockAll(Account... accounts) {
+        int[] wanted = new int[accounts.length];
+        int n = 0;
+        for (Account acc : accounts) {
+            if (acc != null) wanted[n++] = stripeOf(acc.getAccountNumber());
+        }
+        Arrays.sort(wanted, 0, n);
+
+        ReentrantLock[] locked = new ReentrantLock[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && wanted[i] == wanted[i - 1]) continue;   // same stripe: lock it once
+            ReentrantLock lock = stripes[wanted[i]];
+            lock.lock();
+            locked[count++] = lock;
+        }
+        return Arrays.copyOf(locked, count);
+    }
+
+    // Release what lockAll() took, newest first
+    public static void unlock(ReentrantLock[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            locked[i].unlock();
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package bank;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Predicate;
+
+// Append-only write-ahead log for account changes (accounts.log).
+// Every mutation becomes one small line at the end of the file instead of a full
+// accounts.csv rewrite. On startup the log is replayed over accounts.csv, and
+// CsvAccountStore checkpoints it back into the CSV once it grows large enough.
+// LogAccountStore uses the same format as its only file and compacts it instead.
+//
+// Records are numbered (log sequence numbers) across rotations: a log file starts with an
+// "LSN,<n>" line and its records are n+1, n+2, ... An AccountImage remembers the last LSN
+// it contains, so startup only replays the records after it. Files written before LSNs
+// existed have no header line and are always replayed in full.
+//
+// A GROUP record holds several accounts on one line, so a crash leaves all of them or none
+// (both legs of a transfer). Its transfer id, when it has one, ties it to a transfer between
+// shards (ShardedAccountStore): replay only applies it once TransferLog has the commit.
+public class AccountLog {
+
+    public static final String ACCOUNT = "ACCOUNT";
+    public static final String CUSTOMER = "CUSTOMER";
+    public static final String LSN = "LSN";
+    public static final String GROUP = "GROUP";
+    private static final String END = "END";
+    private static final String NO_TRANSFER = "-";
+    private static final int ACCOUNT_FIELDS = 7;
+
+    private final String logFile;
+    private FileOutputStream out;
+    private PrintWriter writer;
+    private long base;   // LSN just before the first record in the file
+    private int entries;
+
+    public AccountLog(String logFile) {
+        this.logFile = logFile;
+        this.base = Math.max(0, readBase(logFile));
+        this.entries = readEntries().size();
+        open();
+    }
+
+    private void open() {
+        try {
+            boolean empty = new File(logFile).length() == 0;
+            boolean torn = !empty && !endsWithNewline();
+            out = new FileOutputStream(logFile, true);
+            writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)), true);
+            if (empty) writer.println(LSN + "," + base);
+
+            // A crash mid-line: end that line, so the next record is not glued onto it
+            if (torn) writer.println();
+        } catch (IOException e) {
+            System.out.println("Error opening account log: " + e.getMessage());
+        }
+    }
+
+    private boolean endsWithNewline() {
+        try (RandomAccessFile f = new RandomAccessFile(logFile, "r")) {
+            f.seek(f.length() - 1);
+            return f.read() == '\n';
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    // ACCOUNT,customerId,customerName,password,accountNumber,accountType,balance,status
+    public synchronized void appendAccount(Account acc) throws IOException {
+        append(ACCOUNT + "," + accountFields(acc));
+    }
+
+    // GROUP,transferId,count, then the seven ACCOUNT fields of each account, then END.
+    // transferId is null for a group that does not depend on a TransferLog commit.
+    public synchronized void appendGroup(List<Account> accounts, String transferId) throws IOException {
+        StringBuilder line = new StringBuilder(GROUP).append(',')
+                .append(transferId == null ? NO_TRANSFER : transferId).append(',')
+                .append(accounts.size());
+        for (Account acc : accounts) {
+            line.append(',').append(accountFields(acc));
+        }
+        append(line.append(',').append(END).toString());
+    }
+
+    private static String accountFields(Account acc) {
+        Customer c = acc.getCustomer();
+        return String.format("%s,%s,%s,%s,%s,%s,%s",
+                c.getCustomerId(),
+                c.getName(),
+                c.getPassword(),
+                acc.getAccountNumber(),
+                acc.getType().toString(),
+                Money.format(acc.getBalanceCents()),
+                acc.getStatus()
+        );
+    }
+
+    // CUSTOMER,customerId,customerName,password
+    public synchronized void appendCustomer(Customer c) throws IOException {
+        append(String.format("%s,%s,%s,%s",
+                CUSTOMER,
+                c.getCustomerId(),
+                c.getName(),
+                c.getPassword()
+        ));
+    }
+
+    // PrintWriter swallows write errors, so they are picked up with checkError() and thrown
+    private void append(String line) throws IOException {
+        if (writer == null) throw new IOException("Account log " + logFile + " is not open");
+        writer.println(line);
+        if (writer.checkError()) throw new IOException("Error writing account log " + logFile);
+        entries++;
+    }
+
+    // Number of records written since the last checkpoint
+    public synchronized int size() {
+        return entries;
+    }
+
+    // LSN of the newest record (or of the last record before this file, if it is empty)
+    public synchronized long lastLsn() {
+        return base + entries;
+    }
+
+    // Number an empty log from lsn on, so its records sort after everything already in an
+    // image or an older log. Needed when the log file was lost or deleted.
+    public synchronized void advanceTo(long lsn) {
+        if (entries > 0 || base >= lsn) return;
+        close();
+        base = lsn;
+        try (PrintWriter w = new PrintWriter(new FileWriter(logFile))) {
+            w.println(LSN + "," + base);
+            if (w.checkError()) throw new IOException("Error writing " + logFile);
+        } catch (IOException e) {
+            System.out.println("Error resetting account log: " + e.getMessage());
+        }
+        open();
+    }
+
+    // Read every record in the log, in the order it was written
+    public synchronized List<String[]> readEntries() {
+        return readEntries(logFile);
+    }
+
+    static List<String[]> readEntries(String logFile) {
+        List<String[]> list = new ArrayList<>();
+
+        File file = new File(logFile);
+        if (!file.exists()) return list;
+
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith(LSN + ",")) continue;
+                list.add(line.split(","));
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading account log: " + e.getMessage());
+        }
+
+        return list;
+    }
+
+    // Force everything appended so far to disk
+    public synchronized void sync() throws IOException {
+        if (writer == null) return;
+        if (writer.checkError()) throw new IOException("Error writing account log " + logFile);
+        out.getFD().sync();
+    }
+
+    // Apply every record on top of the given customers and accounts (accountNumber -> Account)
+    public synchronized void replayInto(Map<String, Customer> customers, Map<String, Account> accounts) {
+        replayInto(customers, accounts, id -> true);
+    }
+
+    // Same, applying a transfer's GROUP records only if committed accepts its id
+    public synchronized void replayInto(Map<String, Customer> customers, Map<String, Account> accounts,
+                                        Predicate<String> committed) {
+        apply(readEntries(), customers, accounts, committed);
+    }
+
+    // Records after afterLsn (all of them if the file has no LSN header), for apply()
+    public synchronized List<String[]> entriesAfter(long afterLsn) {
+        return entriesAfter(logFile, afterLsn);
+    }
+
+    // Same for a log file that is no longer written to (e.g. the one rotate() set aside)
+    static void replayFile(String logFile, Map<String, Customer> customers, Map<String, Account> accounts,
+                           Predicate<String> committed) {
+        apply(readEntries(logFile), customers, accounts, committed);
+    }
+
+    static List<String[]> entriesAfter(String logFile, long afterLsn) {
+        long fileBase = readBase(logFile);
+        List<String[]> rows = readEntries(logFile);
+        if (fileBase >= 0) {
+            int skip = (int) Math.min(rows.size(), Math.max(0, afterLsn - fileBase));
+            rows = rows.subList(skip, rows.size());
+        }
+        return rows;
+    }
+
+    // LSN of the last record in a log file, or -1 if it has no LSN header
+    static long lastLsn(String logFile) {
+        long fileBase = readBase(logFile);
+        return fileBase < 0 ? -1 : fileBase + readEntries(logFile).size();
+    }
+
+    // The n of the file's "LSN,n" header, or -1 if there is none
+    private static long readBase(String logFile) {
+        try (BufferedReader br = new BufferedReader(new FileReader(logFile))) {
+            String line = br.readLine();
+            if (line != null && line.startsWith(LSN + ",")) {
+                return Long.parseLong(line.substring(LSN.length() + 1).trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Missing file or no header
+        }
+        return -1;
+    }
+
+    // Apply records, oldest first
+    static void apply(List<String[]> rows, Map<String, Customer> customers, Map<String, Account> accounts) {
+        apply(rows, customers, accounts, id -> true);
+    }
+
+    static void apply(List<String[]> rows, Map<String, Customer> customers, Map<String, Account> accounts,
+                      Predicate<String> committed) {
+        for (String[] row : rows) {
+            try {
+                if (row[0].equals(ACCOUNT) && row.length >= 8) {
+                    applyAccount(accounts, customerFor(customers, row[1], row[2], row[3]), row[4],
+                            AccountType.valueOf(row[5]), Double.parseDouble(row[6]), row[7]);
+                } else if (row[0].equals(GROUP)) {
+                    applyGroup(row, customers, accounts, committed);
+                } else if (row[0].equals(CUSTOMER) && row.length >= 4) {
+                    Customer customer = customerFor(customers, row[1], row[2], row[3]);
+                    customer.setName(row[2]);
+                    customer.setPassword(row[3]);
+                } else {
+                    System.err.println("Invalid log entry skipped: " + String.join(",", row));
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Invalid log entry skipped: " + String.join(",", row));
+            }
+        }
+    }
+
+    // All of the group's accounts, or none of them when the line is incomplete or its
+    // transfer never committed
+    private static void applyGroup(String[] row, Map<String, Customer> customers, Map<String, Account> accounts,
+                                   Predicate<String> committed) {
+        int count = row.length >= 4 ? Integer.parseInt(row[2]) : -1;
+        if (count < 0 || row.length != 4 + count * ACCOUNT_FIELDS || !row[row.length - 1].equals(END)) {
+            System.err.println("Incomplete log group skipped: " + String.join(",", row));
+            return;
+        }
+        if (!row[1].equals(NO_TRANSFER) && !committed.test(row[1])) {
+            System.out.println("Transfer " + row[1] + " did not commit, ignoring it");
+            return;
+        }
+
+        // Parse everything before applying anything
+        AccountType[] types = new AccountType[count];
+        double[] balances = new double[count];
+        for (int i = 0; i < count; i++) {
+            int f = 3 + i * ACCOUNT_FIELDS;
+            types[i] = AccountType.valueOf(row[f + 4]);
+            balances[i] = Double.parseDouble(row[f + 5]);
+            Integer.parseInt(row[f]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int f = 3 + i * ACCOUNT_FIELDS;
+            applyAccount(accounts, customerFor(customers, row[f], row[f + 1], row[f + 2]), row[f + 3],
+                    types[i], balances[i], row[f + 6]);
+        }
+    }
+
+    // Retrieve or create the customer
+    static Customer customerFor(Map<String, Customer> customers, String customerId, String name, String password) {
+        Customer customer = customers.get(customerId);
+        if (customer == null) {
+            customer = new Customer(Integer.parseInt(customerId), name, password);
+            customers.put(customerId, customer);
+        }
+        return customer;
+    }
+
+    // Insert or update one account row. Shared by the CSV loader and the log replay.
+    static void applyAccount(Map<String, Account> accounts, Customer customer, String accountNumber,
+                             AccountType type, double balance, String status) {
+
+        // Existing account: only balance and status can change
+        Account existing = accounts.get(accountNumber);
+        if (existing != null) {
+            existing.setBalance(balance);
+            existing.setStatus(status);
+            return;
+        }
+
+        Account account = DatabaseManager.newAccount(customer, type, balance);
+        account.setAccountNumber(accountNumber);
+        account.setStatus(status);
+
+        customer.addAccount(account);
+        accounts.put(accountNumber, account);
+    }
+
+    // Replace the whole log with one CUSTOMER record per customer and one ACCOUNT record
+    // per account. The new log is written next to the old one and renamed over it.
+    public synchronized void rewrite(Collection<Customer> customers) throws IOException {
+        Path tmp = Paths.get(logFile + ".tmp");
+        int count = 0;
+
+        // The compacted records are numbered after everything already written
+        long newBase = base + entries;
+
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             PrintWriter w = new PrintWriter(new BufferedWriter(new OutputStreamWriter(fos)))) {
+            w.println(LSN + "," + newBase);
+            for (Customer c : customers) {
+                w.println(String.format("%s,%s,%s,%s", CUSTOMER, c.getCustomerId(), c.getName(), c.getPassword()));
+                count++;
+                for (Account acc : c.getAccounts()) {
+                    w.println(String.format("%s,%s,%s,%s,%s,%s,%s,%s", ACCOUNT, c.getCustomerId(), c.getName(),
+                            c.getPassword(), acc.getAccountNumber(), acc.getType(), Money.format(acc.getBalanceCents()),
+                            acc.getStatus()));
+                    count++;
+                }
+            }
+            w.flush();
+            if (w.checkError()) throw new IOException("Error writing " + tmp);
+            fos.getFD().sync();
+        }
+
+        close();
+        Files.move(tmp, Paths.get(logFile), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        base = newBase;
+        entries = count;
+        open();
+    }
+
+    // Called after a checkpoint: the log moves to previousFile (replacing the one there) and a
+    // new, empty log is started, numbered on from the old one. Records are full account states,
+    // so replaying the set-aside log over a snapshot that already contains it changes nothing.
+    public synchronized void rotate(String previousFile) throws IOException {
+        sync();
+        close();
+        try {
+            if (Files.exists(Paths.get(logFile))) {
+                Files.move(Paths.get(logFile), Paths.get(previousFile), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            base += entries;
+            entries = 0;
+        } finally {
+            open();
+        }
+    }
+
+    public synchronized void close() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package bank;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Where DatabaseManager persists customers and accounts.
+// DatabaseManager keeps the live objects in memory; a store only loads them at startup and
+// records changes. Backends are picked with -Dbank.storage (see StorageConfig).
+public interface AccountStore {
+
+    // Customers (by id) with their accounts, as last persisted
+    Map<String, Customer> load() throws IOException;
+
+    // Record the account's current state
+    void writeAccount(Account account) throws IOException;
+
+    // Record several accounts' current state (a batch of dirty accounts)
+    default void writeAccounts(Collection<Account> accounts) throws IOException {
+        for (Account account : accounts) {
+            writeAccount(account);
+        }
+    }
+
+    // Record several accounts as one unit, e.g. both legs of a transfer: after a crash either
+    // all of the new states are found or none. transferId is set by ShardedAccountStore when
+    // the unit is one shard's part of a transfer between shards, and only counts once that
+    // transfer has committed. Stores that can't do better write the accounts one by one.
+    default void writeTogether(List<Account> accounts, String transferId) throws IOException {
+        writeAccounts(accounts);
+    }
+
+    // Record a new or changed customer (its accounts are written separately)
+    void writeCustomer(Customer customer) throws IOException;
+
+    // True when enough has been recorded that a checkpoint is worthwhile
+    default boolean needsCheckpoint() {
+        return false;
+    }
+
+    // Called with every customer; stores may fold their log into a snapshot or compact it
+    default void checkpoint(Collection<Customer> customers) throws IOException {
+        sync();
+    }
+
+    // Called on clean shutdown with every customer, after every change has been written.
+    // Stores with a fast-start image write it here.
+    default void saveImage(Collection<Customer> customers) throws IOException {
+    }
+
+    // Force everything recorded so far to disk
+    void sync() throws IOException;
+
+    void close() throws IOException;
+}
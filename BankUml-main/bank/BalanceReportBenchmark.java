@@ -0,0 +1,87 @@
+package bank;
+
+import java.util.*;
+
+// Times bank-wide reports (total per AccountType, sum of frozen balances) computed by
+// walking retrieveAllAccounts() against the same reports from AccountColumns.
+//
+// Run (10M accounts needs a few GB of heap):
+//   java -Xmx6g -cp ".:libs/*" bank.BalanceReportBenchmark [size ...]
+public class BalanceReportBenchmark {
+
+    private static final int ACCOUNTS_PER_CUSTOMER = 3;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        long[] sizes = {1_000, 100_000, 1_000_000, 10_000_000};
+        if (args.length > 0) {
+            sizes = new long[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Long.parseLong(args[i]);
+            }
+        }
+
+        System.out.printf("%-12s | %-16s | %-16s%n", "Accounts", "objects ms/report", "columns ms/report");
+        for (long size : sizes) {
+            run((int) size);
+        }
+    }
+
+    private static void run(int size) {
+        DatabaseManager db = new DatabaseManager(buildCustomers(size));
+        AccountColumns columns = db.balanceColumns();
+
+        long expected = 0;
+        long objectNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long[] byType = new long[AccountType.values().length];
+            long frozen = 0;
+            for (Account acc : db.retrieveAllAccounts()) {
+                long cents = acc.getBalanceCents();
+                byType[acc.getType().ordinal()] += cents;
+                if (acc.getStatus().equals("FROZEN")) frozen += cents;
+            }
+            objectNanos = Math.min(objectNanos, System.nanoTime() - start);
+            expected = Arrays.stream(byType).sum() + frozen;
+        }
+
+        long actual = 0;
+        long columnNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long[] byType = columns.totalCentsByType();
+            long frozen = columns.totalCentsWithStatus(AccountColumns.FROZEN);
+            columnNanos = Math.min(columnNanos, System.nanoTime() - start);
+            actual = Arrays.stream(byType).sum() + frozen;
+        }
+
+        if (actual != expected) {
+            System.out.println("Columns disagree with the accounts at size " + size);
+        }
+
+        System.out.printf("%-12d | %-16.3f | %-16.3f%n", size, objectNanos / 1e6, columnNanos / 1e6);
+    }
+
+    // Mixed types, every tenth account frozen
+    private static Map<String, Customer> buildCustomers(int size) {
+        Map<String, Customer> customers = new HashMap<>();
+        AccountType[] types = AccountType.values();
+        Customer customer = null;
+
+        for (int i = 0; i < size; i++) {
+            if (i % ACCOUNTS_PER_CUSTOMER == 0) {
+                int id = i / ACCOUNTS_PER_CUSTOMER + 1;
+                customer = new Customer(id, "Customer " + id, "pass" + id);
+                customers.put(id + "", customer);
+            }
+
+            Account acc = DatabaseManager.newAccount(customer, types[i % types.length], 100.0 + i % 1000);
+            acc.setAccountNumber("ACC" + i);
+            if (i % 10 == 0) acc.freezeAccount();
+            customer.addAccount(acc);
+        }
+
+        return customers;
+    }
+}
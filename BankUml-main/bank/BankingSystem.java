@@ -6,6 +6,7 @@ import java.util.Scanner;
 public class BankingSystem {
     private final String ADMIN_USER = "admin";
     private final String ADMIN_PASS = "admin";
+    private static final int HISTORY_PAGE_SIZE = 20;
     private DatabaseManager db;
     private LoginManager loginManager;
     private Teller currentTeller;
@@ -236,11 +237,11 @@ public class BankingSystem {
         System.out.print("Amount: $");
         double amount = Double.parseDouble(scanner.nextLine().trim());
 
+        // Teller.assistTransaction already persists the account
         Transaction tx = currentTeller.assistTransaction(account, type, amount);
 
         if (tx != null) {
             System.out.println("Transaction successful.");
-            db.updateAccount(account);
         } else {
             System.out.println("Transaction failed.");
         }
@@ -261,11 +262,10 @@ public class BankingSystem {
         System.out.print("Amount: $");
         double amount = Double.parseDouble(scanner.nextLine().trim());
 
+        // Teller.assistTransfer already persists both accounts
         Transaction tx = currentTeller.assistTransfer(source, dest, amount);
         if (tx != null) {
             System.out.println("Transfer successful.");
-            db.updateAccount(source);
-            db.updateAccount(dest);
         } else {
             System.out.println("Transfer failed.");
         }
@@ -467,28 +467,36 @@ public class BankingSystem {
             boolean success = currentCustomer.transfer(source, dest, amount, loginManager);
 
             if (success) {
-                db.updateAccount(source);
-                db.updateAccount(dest);
+                db.updateAccounts(source, dest);
                 System.out.println("Transfer successful.");
             }
         }
 
         private void viewTransactionHistory(Account account) {
-            // Load from CSV
-            List<Transaction> persisted =
-                    TransactionsDatabaseManager.getInstance().loadTransactionsForAccount(account.getAccountNumber());
+            // Load from CSV, newest first, one page at a time
+            TransactionsDatabaseManager txDb = TransactionsDatabaseManager.getInstance();
+            TransactionPage page = txDb.loadTransactionPage(account.getAccountNumber(), HISTORY_PAGE_SIZE, null);
 
-            if (persisted.isEmpty()) {
+            if (page.getTransactions().isEmpty()) {
                 System.out.println("No transactions found.");
                 return;
             }
 
-            for (Transaction tx : persisted) {
-                System.out.printf("ID: %d | %s | $%.2f | %s%n",
-                        tx.getTransactionId(),
-                        tx.getType(),
-                        tx.getAmount(),
-                        tx.getStatus());
+            while (true) {
+                for (Transaction tx : page.getTransactions()) {
+                    System.out.printf("ID: %d | %s | $%.2f | %s%n",
+                            tx.getTransactionId(),
+                            tx.getType(),
+                            tx.getAmount(),
+                            tx.getStatus());
+                }
+
+                if (!page.hasMore()) return;
+
+                System.out.print("Show older transactions? (y/n): ");
+                if (!scanner.nextLine().trim().equalsIgnoreCase("y")) return;
+
+                page = txDb.loadTransactionPage(account.getAccountNumber(), HISTORY_PAGE_SIZE, page.getNextToken());
             }
         }
 
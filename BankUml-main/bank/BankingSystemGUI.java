@@ -13,6 +13,7 @@ public class BankingSystemGUI {
 
     private final String ADMIN_USER = "admin";
     private final String ADMIN_PASS = "admin";
+    private static final int HISTORY_PAGE_SIZE = 50;
 
     public BankingSystemGUI() {
         this.db = DatabaseManager.getInstance();
@@ -1084,8 +1085,7 @@ public class BankingSystemGUI {
             boolean success = currentCustomer.transfer(source, dest, amount, loginManager);
 
             if (success) {
-                db.updateAccount(source);
-                db.updateAccount(dest);
+                db.updateAccounts(source, dest);
                 showStyledMessage("Success",
                         "Transfer successful!\nYour new balance: $" + String.format("%.2f", source.getBalance()),
                         JOptionPane.INFORMATION_MESSAGE);
@@ -1102,21 +1102,34 @@ public class BankingSystemGUI {
     private void viewTransactionHistory(Account account) {
         if (!checkCustomerSession()) return;
 
-        java.util.List<Transaction> transactions =
-                TransactionsDatabaseManager.getInstance().loadTransactionsForAccount(account.getAccountNumber());
+        TransactionsDatabaseManager txDb = TransactionsDatabaseManager.getInstance();
+        TransactionPage page = txDb.loadTransactionPage(account.getAccountNumber(), HISTORY_PAGE_SIZE, null);
 
-        if (transactions.isEmpty()) {
+        if (page.getTransactions().isEmpty()) {
             showStyledMessage("Transaction History", "No transactions found.", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
 
-        StringBuilder sb = new StringBuilder("Transaction History:\n\n");
-        for (Transaction tx : transactions) {
-            sb.append(String.format("ID: %d | %s | $%.2f | %s\n",
-                    tx.getTransactionId(), tx.getType(), tx.getAmount(), tx.getStatus()));
-        }
+        // Newest first, one page at a time
+        while (true) {
+            StringBuilder sb = new StringBuilder("Transaction History:\n\n");
+            for (Transaction tx : page.getTransactions()) {
+                sb.append(String.format("ID: %d | %s | $%.2f | %s\n",
+                        tx.getTransactionId(), tx.getType(), tx.getAmount(), tx.getStatus()));
+            }
 
-        showStyledMessage("Transaction History", sb.toString(), JOptionPane.INFORMATION_MESSAGE);
+            if (!page.hasMore()) {
+                showStyledMessage("Transaction History", sb.toString(), JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+
+            String[] options = {"Older", "Close"};
+            int choice = JOptionPane.showOptionDialog(frame, sb.toString(), "Transaction History",
+                    JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null, options, options[0]);
+            if (choice != 0) return;
+
+            page = txDb.loadTransactionPage(account.getAccountNumber(), HISTORY_PAGE_SIZE, page.getNextToken());
+        }
     }
 
     private void reportStolenCard(Account account) {
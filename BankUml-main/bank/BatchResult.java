@@ -0,0 +1,48 @@
+package bank;
+
+import lombok.Getter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of TransactionEngine.applyBatch, item by item in the order the batch was given
+@Getter
+public class BatchResult {
+    private final List<Transaction> transactions;
+    private final String[] statuses;   // each transaction's status when the batch finished
+    private final int succeeded;
+    private final int failed;
+
+    public BatchResult(List<Transaction> transactions) {
+        this.transactions = transactions;
+        this.statuses = new String[transactions.size()];
+        int ok = 0;
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = transactions.get(i).getStatus();
+            if ("completed".equals(statuses[i])) ok++;
+        }
+        this.succeeded = ok;
+        this.failed = statuses.length - ok;
+    }
+
+    public String getStatus(int index) {
+        return statuses[index];
+    }
+
+    public boolean isSucceeded(int index) {
+        return "completed".equals(statuses[index]);
+    }
+
+    // The transactions that did not complete; their status says why
+    public List<Transaction> getFailures() {
+        List<Transaction> failures = new ArrayList<>();
+        for (int i = 0; i < statuses.length; i++) {
+            if (!isSucceeded(i)) failures.add(transactions.get(i));
+        }
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batch of %d: %d completed, %d failed", statuses.length, succeeded, failed);
+    }
+}
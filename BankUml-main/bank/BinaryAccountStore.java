@@ -0,0 +1,359 @@
+package bank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Binary alternative to accounts.csv.
+//
+// accounts.dat is a 16-byte header followed by fixed-width 40-byte account records:
+//   0  accountNumber   24 bytes, ASCII, zero padded
+//   24 balance         long, cents
+//   32 customerId      int
+//   36 type            byte, AccountType ordinal
+//   37 flags           byte, FROZEN / CARD_STOLEN
+//   38 (padding)       2 bytes
+// An account keeps its slot for life, so a balance or status change is one positional
+// write of the few bytes that changed, instead of rewriting the file.
+//
+// customers.dat holds each customer once (id, name, password) instead of on every account
+// row. It is append-only: a changed customer is appended again and the last record wins.
+//
+// write() replaces both files as a pair: both are written to .tmp files and fsynced, then
+// customers.dat.tmp and accounts.dat.tmp are renamed in that order. If only accounts.dat.tmp
+// is left when the store is opened, a crash came between the renames and the rename is
+// finished. If both are left, it came before them and the old pair is kept.
+public class BinaryAccountStore implements AccountStore, Closeable {
+
+    public static final int RECORD_SIZE = 40;
+    public static final int HEADER_SIZE = 16;
+    public static final int ACCOUNT_NUMBER_SIZE = 24;
+
+    static final int ACCOUNTS_MAGIC = 0x424B4143;  // "BKAC"
+    static final int CUSTOMERS_MAGIC = 0x424B4355; // "BKCU"
+    static final short VERSION = 1;
+
+    static final int BALANCE_OFFSET = 24;
+    static final int CUSTOMER_OFFSET = 32;
+    static final int TYPE_OFFSET = 36;
+    static final int FLAGS_OFFSET = 37;
+    static final int COUNT_OFFSET = 8;
+
+    static final int FROZEN = 1;
+    static final int CARD_STOLEN = 2;
+
+    private final Path accountsFile;
+    private final Path customersFile;
+    private FileChannel accounts;
+    private DataOutputStream customerOut;
+
+    // accountNumber -> record slot
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int count;
+
+    public BinaryAccountStore(String accountsFile, String customersFile) throws IOException {
+        this.accountsFile = Paths.get(accountsFile);
+        this.customersFile = Paths.get(customersFile);
+        recoverPair(this.accountsFile, this.customersFile);
+        open();
+    }
+
+    // Finish or undo a write() that a crash interrupted (see the header comment)
+    private static void recoverPair(Path accountsFile, Path customersFile) throws IOException {
+        Path accountsTmp = tmpFile(accountsFile);
+        Path customersTmp = tmpFile(customersFile);
+        if (!Files.exists(accountsTmp)) return;
+
+        if (Files.exists(customersTmp)) {
+            Files.delete(customersTmp);
+            Files.delete(accountsTmp);
+        } else {
+            System.out.println("Finishing an interrupted write of " + accountsFile);
+            Files.move(accountsTmp, accountsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(accountsFile);
+        }
+    }
+
+    private static Path tmpFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    private void open() throws IOException {
+        accounts = FileChannel.open(accountsFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (accounts.size() < HEADER_SIZE) {
+            writeHeader(accounts, 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(accounts, header, 0);
+            if (header.getInt(0) != ACCOUNTS_MAGIC || header.getShort(4) != VERSION
+                    || header.getShort(6) != RECORD_SIZE) {
+                throw new IOException("Not a version " + VERSION + " account file: " + accountsFile);
+            }
+            // A record whose count update was lost is not trusted
+            count = (int) Math.min(header.getInt(COUNT_OFFSET), (accounts.size() - HEADER_SIZE) / RECORD_SIZE);
+        }
+
+        boolean newCustomers = !Files.exists(customersFile) || Files.size(customersFile) == 0;
+        customerOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(customersFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (newCustomers) {
+            customerOut.writeInt(CUSTOMERS_MAGIC);
+            customerOut.writeInt(VERSION);
+            customerOut.flush();
+        }
+    }
+
+    static void writeHeader(FileChannel channel, int count) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(ACCOUNTS_MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putInt(count);
+        header.clear();
+        writeFully(channel, header, 0);
+    }
+
+    // Read both files into customers with their accounts, in slot order
+    @Override
+    public synchronized Map<String, Customer> load() throws IOException {
+        customerOut.flush();
+        Map<String, Customer> customers = readCustomers(customersFile);
+
+        AccountType[] types = AccountType.values();
+        slots.clear();
+        ByteBuffer batch = ByteBuffer.allocate(RECORD_SIZE * 1024);
+        byte[] number = new byte[ACCOUNT_NUMBER_SIZE];
+
+        for (int first = 0; first < count; first += 1024) {
+            int records = Math.min(1024, count - first);
+            batch.clear().limit(records * RECORD_SIZE);
+            readFully(accounts, batch, HEADER_SIZE + (long) first * RECORD_SIZE);
+
+            for (int i = 0; i < records; i++) {
+                int base = i * RECORD_SIZE;
+                batch.get(base, number);
+                int length = 0;
+                while (length < ACCOUNT_NUMBER_SIZE && number[length] != 0) length++;
+                String accountNumber = new String(number, 0, length, StandardCharsets.US_ASCII);
+
+                Customer customer = customers.get(batch.getInt(base + CUSTOMER_OFFSET) + "");
+                if (customer == null) {
+                    System.err.println("Account " + accountNumber + " has no customer, skipped");
+                    continue;
+                }
+
+                Account account = DatabaseManager.newAccount(customer, types[batch.get(base + TYPE_OFFSET)],
+                        batch.getLong(base + BALANCE_OFFSET) / 100.0);
+                account.setAccountNumber(accountNumber);
+                int flags = batch.get(base + FLAGS_OFFSET);
+                account.setStatus((flags & FROZEN) != 0 ? "FROZEN" : "ACTIVE");
+                account.setCardStolen((flags & CARD_STOLEN) != 0);
+
+                customer.addAccount(account);
+                slots.put(accountNumber, first + i);
+            }
+        }
+
+        return customers;
+    }
+
+    // Write the account's current balance and status; new accounts get the next slot
+    @Override
+    public synchronized void writeAccount(Account account) throws IOException {
+        Integer slot = slots.get(account.getAccountNumber());
+
+        if (slot == null) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            encode(account, record);
+            record.clear();
+            writeFully(accounts, record, HEADER_SIZE + (long) count * RECORD_SIZE);
+            slots.put(account.getAccountNumber(), count++);
+
+            ByteBuffer header = ByteBuffer.allocate(4).putInt(0, count);
+            writeFully(accounts, header, COUNT_OFFSET);
+            return;
+        }
+
+        // Existing account: only balance (bytes 24-31) and flags (byte 37) change.
+        // Customer id and type sit between them and are rewritten with their current values.
+        ByteBuffer change = ByteBuffer.allocate(FLAGS_OFFSET + 1 - BALANCE_OFFSET);
+        change.putLong(account.getBalanceCents())
+                .putInt(account.getCustomer().getCustomerId())
+                .put((byte) account.getType().ordinal())
+                .put(flags(account));
+        change.clear();
+        writeFully(accounts, change, HEADER_SIZE + (long) slot * RECORD_SIZE + BALANCE_OFFSET);
+    }
+
+    @Override
+    public synchronized void writeCustomer(Customer customer) throws IOException {
+        writeCustomer(customerOut, customer);
+        customerOut.flush();
+    }
+
+    // Replace both files with exactly these customers and accounts
+    public synchronized void saveAll(Collection<Customer> customers) throws IOException {
+        close();
+        write(customers, accountsFile, customersFile);
+
+        // write() fills slots in iteration order
+        slots.clear();
+        count = 0;
+        for (Customer customer : customers) {
+            for (Account account : customer.getAccounts()) {
+                slots.put(account.getAccountNumber(), count++);
+            }
+        }
+        open();
+    }
+
+    // Write a fresh accounts file and customers file (used by saveAll and the converter)
+    public static void write(Collection<Customer> customers, Path accountsFile, Path customersFile) throws IOException {
+        Path accountsTmp = tmpFile(accountsFile);
+        Path customersTmp = tmpFile(customersFile);
+
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(accountsTmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             FileOutputStream customersOut = new FileOutputStream(customersTmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(customersOut))) {
+
+            out.writeInt(CUSTOMERS_MAGIC);
+            out.writeInt(VERSION);
+
+            ByteBuffer batch = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            channel.position(HEADER_SIZE);
+
+            for (Customer customer : customers) {
+                writeCustomer(out, customer);
+                for (Account account : customer.getAccounts()) {
+                    record.clear();
+                    encode(account, record);
+                    batch.put(record.array());
+                    count++;
+                    if (!batch.hasRemaining()) {
+                        batch.flip();
+                        while (batch.hasRemaining()) channel.write(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            batch.flip();
+            while (batch.hasRemaining()) channel.write(batch);
+
+            writeHeader(channel, count);
+            channel.force(false);
+            out.flush();
+            customersOut.getFD().sync();
+        }
+
+        // Both files are complete on disk before either takes the place of the old one
+        Files.move(customersTmp, customersFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(accountsTmp, accountsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(accountsFile);
+    }
+
+    // Make the renames durable. Not possible on every platform (e.g. Windows).
+    private static void syncDirectory(Path file) {
+        try (FileChannel dir = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    // Customers from customers.dat, without accounts
+    static Map<String, Customer> readCustomers(Path customersFile) throws IOException {
+        Map<String, Customer> customers = new HashMap<>();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(customersFile)))) {
+            if (in.readInt() != CUSTOMERS_MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " customer file: " + customersFile);
+            }
+            while (true) {
+                int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                String name = in.readUTF();
+                String password = in.readUTF();
+
+                Customer existing = customers.get(id + "");
+                if (existing == null) {
+                    customers.put(id + "", new Customer(id, name, password));
+                } else {
+                    existing.setName(name);
+                    existing.setPassword(password);
+                }
+            }
+        } catch (EOFException e) {
+            System.out.println("Truncated customer record ignored in " + customersFile);
+        }
+        return customers;
+    }
+
+    static void writeCustomer(DataOutputStream out, Customer customer) throws IOException {
+        out.writeInt(customer.getCustomerId());
+        out.writeUTF(customer.getName() != null ? customer.getName() : "");
+        out.writeUTF(customer.getPassword() != null ? customer.getPassword() : "");
+    }
+
+    static void encode(Account account, ByteBuffer record) {
+        byte[] number = account.getAccountNumber().getBytes(StandardCharsets.US_ASCII);
+        if (number.length > ACCOUNT_NUMBER_SIZE) {
+            throw new IllegalArgumentException("Account number longer than " + ACCOUNT_NUMBER_SIZE
+                    + " bytes: " + account.getAccountNumber());
+        }
+        record.put(number);
+        record.position(BALANCE_OFFSET);
+        record.putLong(account.getBalanceCents());
+        record.putInt(account.getCustomer().getCustomerId());
+        record.put((byte) account.getType().ordinal());
+        record.put(flags(account));
+    }
+
+    static long cents(double balance) {
+        return Money.cents(balance);
+    }
+
+    static byte flags(Account account) {
+        int flags = 0;
+        if ("FROZEN".equals(account.getStatus())) flags |= FROZEN;
+        if (account.isCardStolen()) flags |= CARD_STOLEN;
+        return (byte) flags;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) throw new EOFException();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position());
+        }
+    }
+
+    // Force account changes to disk
+    @Override
+    public synchronized void sync() throws IOException {
+        customerOut.flush();
+        accounts.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (customerOut != null) customerOut.close();
+        if (accounts != null && accounts.isOpen()) {
+            accounts.force(false);
+            accounts.close();
+        }
+    }
+}
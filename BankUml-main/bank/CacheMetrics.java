@@ -0,0 +1,37 @@
+package bank;
+
+import lombok.Getter;
+
+// Snapshot of TinyLfuCache counters
+@Getter
+public class CacheMetrics {
+    private final int size;
+    private final int capacity;
+    private final long hits;
+    private final long misses;
+    private final long loads;        // misses the loader found a value for
+    private final long evictions;
+    private final long loadNanos;    // total time spent in the loader
+
+    public CacheMetrics(int size, int capacity, long hits, long misses, long loads, long evictions, long loadNanos) {
+        this.size = size;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.loads = loads;
+        this.evictions = evictions;
+        this.loadNanos = loadNanos;
+    }
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cache %d/%d, hits %d, misses %d (hit rate %.1f%%), loads %d, evictions %d, avg load %d us",
+                size, capacity, hits, misses, getHitRate() * 100, loads, evictions,
+                misses == 0 ? 0 : loadNanos / misses / 1000);
+    }
+}
@@ -1,9 +1,15 @@
 package bank;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 public class Checking extends Account {
 
-    private static final double OVERDRAFT_LIMIT = 500.0;
-    private double overdraftUsed = 0.0;
+    private static final long OVERDRAFT_LIMIT_CENTS = 500_00;
+
+    // Overdraft bookkeeping changes together with the balance, so it is guarded by the
+    // account's stripe in AccountLocks. The balance itself is still changed by compare-and-set:
+    // Transaction.apply credits and debits it without the lock.
+    private long overdraftUsedCents = 0;
 
     public Checking(Customer customer) {
         super(customer, AccountType.CHECKING);
@@ -14,7 +20,7 @@ public class Checking extends Account {
     }
 
     public double getAvailableBalance() {
-        return balance + (OVERDRAFT_LIMIT - overdraftUsed);
+        return (getBalanceCents() + OVERDRAFT_LIMIT_CENTS - overdraftUsedCents) / 100.0;
     }
 
     public boolean deposit(double amount) {
@@ -23,17 +29,26 @@ public class Checking extends Account {
             return false;
         }
 
-        // If in overdraft, pay that back first
-        if (overdraftUsed > 0) {
-            double overdraftPayment = Math.min(amount, overdraftUsed);
-            overdraftUsed -= overdraftPayment;
-            amount -= overdraftPayment;
-            System.out.println("Paid back $" + String.format("%.2f", overdraftPayment) + " of overdraft");
+        long cents = Money.cents(amount);
+        ReentrantLock lock = AccountLocks.getInstance().lockFor(accountNumber);
+        lock.lock();
+        try {
+            // If in overdraft, pay that back first
+            if (overdraftUsedCents > 0) {
+                long overdraftPayment = Math.min(cents, overdraftUsedCents);
+                overdraftUsedCents -= overdraftPayment;
+                cents -= overdraftPayment;
+                System.out.println("Paid back $" + Money.format(overdraftPayment) + " of overdraft");
+            }
+
+            addCents(cents);
+        } finally {
+            lock.unlock();
         }
 
-        balance += amount;
-        System.out.println("Deposited $" + String.format("%.2f", amount));
-        System.out.println("New balance: $" + String.format("%.2f", balance));
+        amount = cents / 100.0;
+        System.out.println("Deposited $" + Money.format(cents));
+        System.out.println("New balance: $" + Money.format(getBalanceCents()));
 
         Transaction tx = new Transaction(
                 generateTransactionId(),
@@ -53,23 +68,35 @@ public class Checking extends Account {
             return false;
         }
 
-        double available = getAvailableBalance();
-        if (amount > available) {
-            System.out.println("Withdrawal failed: Insufficient funds (including overdraft)");
-            return false;
-        }
-
-        if (amount > balance) {
-            double overdraftNeeded = amount - balance;
-            overdraftUsed += overdraftNeeded;
-            balance = 0;
-            System.out.println("Used $" + String.format("%.2f", overdraftNeeded) + " of overdraft");
-        } else {
-            balance -= amount;
+        // The funds check is part of the compare-and-set that debits: what the balance can't
+        // cover is taken from the overdraft, and the balance stops at zero
+        long cents = Money.cents(amount);
+        ReentrantLock lock = AccountLocks.getInstance().lockFor(accountNumber);
+        lock.lock();
+        try {
+            while (true) {
+                long balance = getBalanceCents();
+                if (cents > balance + OVERDRAFT_LIMIT_CENTS - overdraftUsedCents) {
+                    System.out.println("Withdrawal failed: Insufficient funds (including overdraft)");
+                    return false;
+                }
+
+                long fromBalance = Math.min(cents, Math.max(balance, 0));
+                if (compareAndSetBalanceCents(balance, balance - fromBalance)) {
+                    long overdraftNeeded = cents - fromBalance;
+                    if (overdraftNeeded > 0) {
+                        overdraftUsedCents += overdraftNeeded;
+                        System.out.println("Used $" + Money.format(overdraftNeeded) + " of overdraft");
+                    }
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
         }
 
-        System.out.println("Withdrawn $" + String.format("%.2f", amount));
-        System.out.println("New balance: $" + String.format("%.2f", balance));
+        System.out.println("Withdrawn $" + Money.format(cents));
+        System.out.println("New balance: $" + Money.format(getBalanceCents()));
 
         Transaction tx = new Transaction(
                 generateTransactionId(),
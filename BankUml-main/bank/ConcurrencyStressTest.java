@@ -0,0 +1,111 @@
+package bank;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hammers a handful of accounts with deposits, withdrawals and transfers in both directions
+// from many threads through Transaction.validate/apply, then checks that no update was lost:
+// every account must end at its start balance plus what the successful transactions moved,
+// and transfers must leave the bank total unchanged. Balances are whole cents, so the
+// comparison is exact.
+//
+// Run (in-memory accounts; transaction records stay in memory too unless -Dbank.storage says
+// otherwise, so a run doesn't add to the transaction history in the working directory):
+//   java -cp ".:libs/*" bank.ConcurrencyStressTest [threads] [operations per thread] [accounts]
+public class ConcurrencyStressTest {
+
+    private static final long START_CENTS = 1_000_000_00;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        if (System.getProperty("bank.storage") == null) System.setProperty("bank.storage", "memory");
+
+        Customer customer = new Customer(1, "Stress Test", "pass");
+        Account[] accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = new Checking(customer, START_CENTS / 100.0);
+            accounts[i].setAccountNumber("STRESS" + i);
+            customer.addAccount(accounts[i]);
+        }
+
+        // What each account should gain or lose, from the transactions that completed
+        AtomicLong[] expected = new AtomicLong[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            expected[i] = new AtomicLong();
+        }
+        AtomicLong completed = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                start.await();
+                for (int op = 0; op < operations; op++) {
+                    int from = random.nextInt(accountCount);
+                    int to = random.nextInt(accountCount);
+                    long cents = 1 + random.nextInt(50_000);
+                    double amount = cents / 100.0;
+
+                    Transaction tx;
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            tx = new Transaction(op, amount, "deposit", null, accounts[to]);
+                            break;
+                        case 1:
+                            tx = new Transaction(op, amount, "withdraw", accounts[from], null);
+                            break;
+                        default:
+                            if (from == to) to = (to + 1) % accountCount;
+                            tx = new Transaction(op, amount, "transfer", accounts[from], accounts[to]);
+                    }
+
+                    if (!tx.validate(null) || !tx.apply()) {
+                        refused.incrementAndGet();
+                        continue;
+                    }
+                    completed.incrementAndGet();
+                    if (tx.getSourceAccount() != null) expected[from].addAndGet(-cents);
+                    if (tx.getTargetAccount() != null) expected[to].addAndGet(cents);
+                }
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        pool.shutdown();
+
+        int lost = 0;
+        for (int i = 0; i < accountCount; i++) {
+            long want = START_CENTS + expected[i].get();
+            long got = accounts[i].getBalanceCents();
+            if (got != want) {
+                lost++;
+                System.out.println(accounts[i].getAccountNumber() + ": expected " + Money.format(want)
+                        + ", found " + Money.format(got));
+            }
+            if (got < 0) {
+                System.out.println(accounts[i].getAccountNumber() + " went negative");
+            }
+        }
+
+        System.out.printf("%d threads, %d accounts: %d transactions completed, %d refused, %.0f ops/s%n",
+                threads, accountCount, completed.get(), refused.get(),
+                (completed.get() + refused.get()) / (elapsed / 1e9));
+        System.out.println(lost == 0 ? "No lost updates" : lost + " accounts lost updates");
+
+        TransactionsDatabaseManager.getInstance().close();
+        if (lost != 0) System.exit(1);
+    }
+}
@@ -0,0 +1,224 @@
+package bank;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Predicate;
+
+// The original backend: accounts.csv as the snapshot plus accounts.log (AccountLog) for
+// changes made since. Every change is one log line; once the log holds CHECKPOINT_INTERVAL
+// records it is folded back into accounts.csv.
+//
+// accounts.csv is a SnapshotFile: written to a temp file, fsynced, renamed into place and
+// checked against per-block CRC32C checksums on load. The snapshot before it is kept as
+// accounts.csv.prev, and the log it absorbed as accounts.log.prev, so when accounts.csv is
+// damaged the previous snapshot plus both logs rebuild the same state. Load replays at most
+// two logs of CHECKPOINT_INTERVAL records, so restart time does not grow with history.
+//
+// Parsing accounts.csv is still slow for millions of accounts, so each checkpoint and each
+// clean shutdown also write accounts.img (AccountImage). Startup loads the image instead
+// when it is intact and matches accounts.csv, and replays only the log records after it.
+public class CsvAccountStore implements AccountStore {
+
+    public static final String CSV_FILE = "accounts.csv";
+    public static final String LOG_FILE = "accounts.log";
+    public static final String IMAGE_FILE = "accounts.img";
+    private static final String PREVIOUS = ".prev";
+
+    // Number of log records before they are folded back into accounts.csv
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    private static final String HEADER = "customerId,customerName,password,accountNumber,accountType,balance,status";
+
+    private final SnapshotFile snapshot;
+    private final String logFile;
+    private final AccountLog log;
+    private final AccountImage image;
+    private final Predicate<String> committed;   // transfer ids whose GROUP records count
+
+    public CsvAccountStore() {
+        this(CSV_FILE, LOG_FILE, IMAGE_FILE);
+    }
+
+    public CsvAccountStore(String csvFile, String logFile, String imageFile) {
+        this(csvFile, logFile, imageFile, id -> true);
+    }
+
+    // One shard of a ShardedAccountStore; committed answers for its TransferLog
+    public CsvAccountStore(String csvFile, String logFile, String imageFile, Predicate<String> committed) {
+        this.snapshot = new SnapshotFile(csvFile);
+        this.logFile = logFile;
+        this.log = new AccountLog(logFile);
+        this.image = new AccountImage(imageFile);
+        this.committed = committed;
+    }
+
+    // The image or the newest good snapshot, brought up to date with the changes recorded since
+    @Override
+    public Map<String, Customer> load() {
+        Map<String, Customer> customers;
+        long loadedLsn = 0;
+
+        AccountImage.Loaded loaded = image.read(snapshot.getFile());
+        if (loaded != null) {
+            customers = loaded.customers;
+            loadedLsn = loaded.lsn;
+
+            // After a clean shutdown there is nothing newer than the image
+            List<String[]> pending = new ArrayList<>(AccountLog.entriesAfter(logFile + PREVIOUS, loadedLsn));
+            pending.addAll(log.entriesAfter(loadedLsn));
+            if (!pending.isEmpty()) {
+                AccountLog.apply(pending, customers, loaded.accounts(), committed);
+            }
+        } else {
+            Map<String, Account> accounts = new HashMap<>();
+            customers = readCsv(snapshot.latestGood().toString(), accounts);
+            AccountLog.replayFile(logFile + PREVIOUS, customers, accounts, committed);
+            log.replayInto(customers, accounts, committed);
+        }
+
+        // New records must be numbered after everything the image and the older log hold
+        log.advanceTo(Math.max(loadedLsn, AccountLog.lastLsn(logFile + PREVIOUS)));
+        return customers;
+    }
+
+    private Map<String, Customer> readCsv(String csvFile, Map<String, Account> accounts) {
+        // Large files are parsed in chunks on all cores
+        if (new File(csvFile).length() >= ParallelAccountLoader.PARALLEL_THRESHOLD) {
+            try {
+                Map<String, Customer> customers = new ParallelAccountLoader(csvFile).load();
+                for (Customer customer : customers.values()) {
+                    for (Account acc : customer.getAccounts()) {
+                        accounts.put(acc.getAccountNumber(), acc);
+                    }
+                }
+                return customers;
+            } catch (Exception e) {
+                System.err.println("Parallel load failed, falling back to a single thread: " + e.getMessage());
+                accounts.clear();
+            }
+        }
+
+        Map<String, Customer> customers = new HashMap<>();
+
+        try (CsvTokenizer csv = new CsvTokenizer(new FileInputStream(csvFile))) {
+
+            // Skip header row
+            csv.nextRow();
+
+            AccountType[] types = AccountType.values();
+            Customer customer = null;
+
+            while (csv.nextRow()) {
+
+                if (csv.fieldCount() < 7) {
+                    System.err.println("Invalid row skipped: " + csv.rowText());
+                    continue;
+                }
+
+                // Rows of one customer are written together, so most rows reuse the previous customer
+                int customerId = csv.getInt(0);
+                if (customer == null || customer.getCustomerId() != customerId) {
+                    customer = customers.get(customerId + "");
+                    if (customer == null) {
+                        customer = AccountLog.customerFor(customers, customerId + "", csv.getString(1), csv.getString(2));
+                    }
+                }
+
+                AccountLog.applyAccount(accounts, customer,
+                        csv.getString(3),
+                        csv.getEnum(4, types),
+                        csv.getDouble(5),
+                        csv.getInterned(6));
+            }
+
+        } catch (FileNotFoundException e) {
+            System.out.println("No " + csvFile + " found, starting empty");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return customers;
+    }
+
+    @Override
+    public void writeAccount(Account account) throws IOException {
+        log.appendAccount(account);
+    }
+
+    @Override
+    public void writeTogether(List<Account> accounts, String transferId) throws IOException {
+        log.appendGroup(accounts, transferId);
+    }
+
+    @Override
+    public void writeCustomer(Customer customer) throws IOException {
+        log.appendCustomer(customer);
+    }
+
+    @Override
+    public boolean needsCheckpoint() {
+        return log.size() >= CHECKPOINT_INTERVAL;
+    }
+
+    // Fold the log into a new accounts.csv and image, and start a fresh log
+    @Override
+    public void checkpoint(Collection<Customer> customers) throws IOException {
+        // Every record up to here is reflected in the customers about to be written
+        long lsn = log.lastLsn();
+
+        snapshot.write(out -> writeCsv(out, customers));
+        try {
+            image.write(customers, lsn, snapshot.getFile());
+        } catch (IOException e) {
+            // The next start parses accounts.csv instead
+            System.out.println("Error writing account image: " + e.getMessage());
+        }
+        log.rotate(logFile + PREVIOUS);
+    }
+
+    @Override
+    public void saveImage(Collection<Customer> customers) throws IOException {
+        image.write(customers, log.lastLsn(), snapshot.getFile());
+    }
+
+    // Write customers and their accounts in the accounts.csv layout, crash-safely
+    static void writeCsv(String file, Collection<Customer> customers) throws IOException {
+        new SnapshotFile(file).write(out -> writeCsv(out, customers));
+    }
+
+    private static void writeCsv(OutputStream out, Collection<Customer> customers) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)))) {
+
+            // Write correct header with status column
+            writer.println(HEADER);
+
+            // Loop through all customers and their accounts
+            for (Customer c : customers) {
+                for (Account acc : c.getAccounts()) {
+
+                    writer.println(String.format("%s,%s,%s,%s,%s,%s,%s",
+                            c.getCustomerId(),
+                            c.getName(),
+                            c.getPassword(),
+                            acc.getAccountNumber(),
+                            acc.getType().toString(),   // account type (CARD, CHECK, etc.)
+                            Money.format(acc.getBalanceCents()),
+                            acc.getStatus()             // Save status (ACTIVE or FROZEN)
+                    ));
+                }
+            }
+
+            if (writer.checkError()) throw new IOException("Error writing accounts");
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+}
@@ -0,0 +1,85 @@
+package bank;
+
+import java.io.*;
+import java.util.*;
+
+// tellers.csv, rewritten on every change (there are only a handful of tellers).
+// Written as a SnapshotFile, so a crash mid-write leaves the previous version.
+public class CsvTellerStore implements TellerStore {
+
+    public static final String CSV_FILE = "tellers.csv";
+
+    private static final String HEADER = "employeeId,name,email,password";
+
+    private final SnapshotFile snapshot;
+
+    public CsvTellerStore() {
+        this(CSV_FILE);
+    }
+
+    public CsvTellerStore(String csvFile) {
+        this.snapshot = new SnapshotFile(csvFile);
+    }
+
+    @Override
+    public Map<String, Teller> load() {
+        Map<String, Teller> map = new HashMap<>();
+
+        try (CsvTokenizer csv = new CsvTokenizer(new FileInputStream(snapshot.latestGood().toFile()))) {
+
+            // skip header
+            csv.nextRow();
+
+            while (csv.nextRow()) {
+
+                if (csv.fieldCount() < 4) continue;
+
+                String id = csv.getString(0);
+                String name = csv.getString(1);
+                String email = csv.getString(2);
+                String password = csv.getString(3);
+
+                Teller t = new Teller(id, name, email, password);
+                map.put(id, t);
+            }
+
+        } catch (Exception e) {
+            System.out.println("No " + snapshot.getFile() + " found, creating new file...");
+            save(Collections.emptyList());
+        }
+
+        return map;
+    }
+
+    @Override
+    public void put(Teller teller, Collection<Teller> all) {
+        save(all);
+    }
+
+    @Override
+    public void remove(String employeeId, Collection<Teller> all) {
+        save(all);
+    }
+
+    private void save(Collection<Teller> tellers) {
+        try {
+            snapshot.write(out -> {
+                PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+                writer.println(HEADER);
+
+                for (Teller t : tellers) {
+                    writer.println(String.format("%s,%s,%s,%s",
+                            t.getEmployeeId(),
+                            t.getName(),
+                            t.getEmail(),
+                            t.getPassword()
+                    ));
+                }
+
+                if (writer.checkError()) throw new IOException("Error writing tellers");
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package bank;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Byte-level CSV reader shared by the database managers.
+// Rows are split in place inside one reusable buffer, and fields are parsed straight
+// from the bytes into ints, doubles, enums or interned strings, so reading a row only
+// allocates for the text fields the caller really keeps (names, account numbers...).
+//
+// The format is the simple one our files use: comma separated, no quoting,
+// one row per line, optional surrounding spaces. Blank lines are skipped.
+public class CsvTokenizer implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int INTERN_CAPACITY = 1 << 12;
+
+    // 10^0 .. 10^22 are all exact doubles, which keeps the fast path correctly rounded
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final InputStream in;
+    private long remaining;   // bytes we may still read from 'in'
+    private byte[] buf;
+    private long bufBase;  // stream offset of buf[0]
+    private int pos;       // start of the unread data in buf
+    private int end;       // end of the valid data in buf
+    private boolean eof;
+
+    // Current row
+    private int rowStart;
+    private int rowEnd;
+    private int rowNext;
+    private int fields;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+
+    // Small open-addressing table for repeated values like "ACTIVE" or "deposit"
+    private final String[] internTable = new String[INTERN_CAPACITY];
+    private int internCount;
+
+    public CsvTokenizer(InputStream in) {
+        this(in, Long.MAX_VALUE);
+    }
+
+    // Reads at most 'limit' bytes from the stream, e.g. one chunk of a larger file
+    public CsvTokenizer(InputStream in, long limit) {
+        this.in = in;
+        this.remaining = limit;
+        this.buf = new byte[(int) Math.max(64, Math.min(BUFFER_SIZE, limit))];
+    }
+
+    // Advance to the next non-blank row. Returns false at end of input.
+    public boolean nextRow() throws IOException {
+        int scan = pos;
+
+        while (true) {
+            int nl = -1;
+            for (int i = scan; i < end; i++) {
+                if (buf[i] == '\n') {
+                    nl = i;
+                    break;
+                }
+            }
+
+            int lineEnd;
+            int next;
+            if (nl >= 0) {
+                lineEnd = nl;
+                next = nl + 1;
+            } else if (!eof) {
+                // Row continues past the buffer: pull in more bytes and keep scanning
+                int scanned = end - pos;
+                fill();
+                scan = pos + scanned;
+                continue;
+            } else if (pos < end) {
+                // Last row without a trailing newline
+                lineEnd = end;
+                next = end;
+            } else {
+                return false;
+            }
+
+            if (lineEnd > pos && buf[lineEnd - 1] == '\r') lineEnd--;
+
+            rowStart = pos;
+            rowEnd = lineEnd;
+            rowNext = next;
+            pos = next;
+            scan = next;
+
+            if (isBlank(rowStart, rowEnd)) continue;
+
+            split();
+            return true;
+        }
+    }
+
+    private void fill() throws IOException {
+        // Move the unread tail to the front, growing the buffer for very long rows
+        int unread = end - pos;
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, unread);
+            bufBase += pos;
+        } else if (unread == buf.length) {
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, unread);
+            buf = bigger;
+        }
+        pos = 0;
+        end = unread;
+
+        int max = (int) Math.min(buf.length - end, remaining);
+        int n = max == 0 ? -1 : in.read(buf, end, max);
+        if (n < 0) {
+            eof = true;
+        } else {
+            end += n;
+            remaining -= n;
+        }
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] != ' ' && buf[i] != '\t') return false;
+        }
+        return true;
+    }
+
+    private void split() {
+        fields = 0;
+        int start = rowStart;
+        for (int i = rowStart; i <= rowEnd; i++) {
+            if (i == rowEnd || buf[i] == ',') {
+                addField(start, i);
+                start = i + 1;
+            }
+        }
+    }
+
+    private void addField(int start, int stop) {
+        // trim()
+        while (start < stop && (buf[start] == ' ' || buf[start] == '\t')) start++;
+        while (stop > start && (buf[stop - 1] == ' ' || buf[stop - 1] == '\t')) stop--;
+
+        if (fields == fieldStart.length) {
+            fieldStart = java.util.Arrays.copyOf(fieldStart, fields * 2);
+            fieldEnd = java.util.Arrays.copyOf(fieldEnd, fields * 2);
+        }
+        fieldStart[fields] = start;
+        fieldEnd[fields] = stop;
+        fields++;
+    }
+
+    public int fieldCount() {
+        return fields;
+    }
+
+    // Offset of the current row from the start of the stream
+    public long rowOffset() {
+        return bufBase + rowStart;
+    }
+
+    // Length of the current row in bytes, including its line break
+    public int rowLength() {
+        return rowNext - rowStart;
+    }
+
+    // The raw row, for error messages
+    public String rowText() {
+        return new String(buf, rowStart, rowEnd - rowStart, StandardCharsets.UTF_8);
+    }
+
+    public boolean isEmpty(int field) {
+        return fieldEnd[field] == fieldStart[field];
+    }
+
+    public String getString(int field) {
+        int start = fieldStart[field];
+        return new String(buf, start, fieldEnd[field] - start, StandardCharsets.UTF_8);
+    }
+
+    // Same as getString, but repeated values come back as the same String instance.
+    // Only ASCII values are interned; the table stops growing once it is 3/4 full.
+    public String getInterned(int field) {
+        int start = fieldStart[field];
+        int len = fieldEnd[field] - start;
+
+        int h = 0;
+        for (int i = start; i < start + len; i++) {
+            if (buf[i] < 0) return getString(field);
+            h = 31 * h + buf[i];
+        }
+
+        int mask = INTERN_CAPACITY - 1;
+        for (int slot = mix(h) & mask; ; slot = (slot + 1) & mask) {
+            String s = internTable[slot];
+            if (s == null) {
+                s = new String(buf, start, len, StandardCharsets.US_ASCII);
+                if (internCount < INTERN_CAPACITY * 3 / 4) {
+                    internTable[slot] = s;
+                    internCount++;
+                }
+                return s;
+            }
+            if (s.hashCode() == h && equalsAscii(start, len, s)) return s;
+        }
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    public boolean fieldEquals(int field, String value) {
+        int start = fieldStart[field];
+        return equalsAscii(start, fieldEnd[field] - start, value);
+    }
+
+    private boolean equalsAscii(int start, int len, String value) {
+        if (value.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (buf[start + i] != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public <E extends Enum<E>> E getEnum(int field, E[] values) {
+        for (E value : values) {
+            if (fieldEquals(field, value.name())) return value;
+        }
+        throw new IllegalArgumentException("No enum constant " + getString(field));
+    }
+
+    public int getInt(int field) {
+        long value = getLong(field);
+        if (value != (int) value) throw new NumberFormatException("Value out of range: " + getString(field));
+        return (int) value;
+    }
+
+    public long getLong(int field) {
+        int i = fieldStart[field];
+        int stop = fieldEnd[field];
+
+        boolean negative = false;
+        if (i < stop && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        if (i == stop) throw new NumberFormatException("Invalid number: " + getString(field));
+
+        // Accumulate negatively so Long.MIN_VALUE parses too (same approach as Long.parseLong)
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long value = 0;
+        for (; i < stop; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9 || value < (limit + d) / 10) {
+                throw new NumberFormatException("Invalid number: " + getString(field));
+            }
+            value = value * 10 - d;
+        }
+        return negative ? value : -value;
+    }
+
+    // Plain decimals ("-123.45") are parsed without allocating; anything else
+    // (exponents, very long mantissas, NaN...) goes through Double.parseDouble.
+    public double getDouble(int field) {
+        int i = fieldStart[field];
+        int stop = fieldEnd[field];
+
+        boolean negative = false;
+        if (i < stop && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+
+        for (; i < stop; i++) {
+            byte b = buf[i];
+            if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenDot) fractionDigits++;
+            } else {
+                return Double.parseDouble(getString(field));
+            }
+        }
+
+        if (digits == 0 || digits > 15 || fractionDigits >= POW10.length) {
+            return Double.parseDouble(getString(field));
+        }
+
+        double value = mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
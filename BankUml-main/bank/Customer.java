@@ -3,8 +3,8 @@ package bank;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Setter
 @Getter
@@ -17,7 +17,7 @@ public class Customer {
     private String phone;
     private String email;
     private String accountNumber;
-    private List<Account> accounts = new ArrayList<>();
+    private List<Account> accounts = new CopyOnWriteArrayList<>();   // read far more often than changed
 
     public Customer(String name) {
         this.name = name;
@@ -61,7 +61,7 @@ public class Customer {
 
         System.out.println("=== Account Information ===");
         System.out.println("Account ID: " + account.getAccountNumber());
-        System.out.println("Balance: $" + account.getBalance());
+        System.out.println("Balance: $" + Money.format(account.getBalanceCents()));
         System.out.println("Status: " + account.getStatus());
         System.out.println("===========================");
     }
@@ -85,7 +85,7 @@ public class Customer {
             return false;
         }
 
-        System.out.println("Deposit successful. New balance: $" + account.getBalance());
+        System.out.println("Deposit successful. New balance: $" + Money.format(account.getBalanceCents()));
         return true;
     }
 
@@ -108,7 +108,7 @@ public class Customer {
             return false;
         }
 
-        System.out.println("Withdrawal successful. New balance: $" + account.getBalance());
+        System.out.println("Withdrawal successful. New balance: $" + Money.format(account.getBalanceCents()));
         return true;
     }
 
@@ -132,8 +132,8 @@ public class Customer {
         }
 
         System.out.println("Transfer successful.");
-        System.out.println("New Source Balance: $" + source.getBalance());
-        System.out.println("New Target Balance: $" + target.getBalance());
+        System.out.println("New Source Balance: $" + Money.format(source.getBalanceCents()));
+        System.out.println("New Target Balance: $" + Money.format(target.getBalanceCents()));
 
         return true;
     }
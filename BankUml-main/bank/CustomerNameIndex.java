@@ -0,0 +1,61 @@
+package bank;
+
+import java.util.*;
+
+// Secondary index from a normalized customer name to customer IDs.
+// Names are trimmed, lower-cased and have their inner whitespace collapsed, so
+// "  john   DOE" and "John Doe" land on the same key. Keys are kept sorted,
+// which makes prefix search a range scan instead of a full pass.
+public class CustomerNameIndex {
+
+    private final NavigableMap<String, Set<String>> index = new TreeMap<>();
+
+    // Same result as name.trim().replaceAll("\\s+", " ").toLowerCase(), in one pass without a
+    // regex: this runs for every customer at startup
+    public static String normalize(String name) {
+        if (name == null) return "";
+        String trimmed = name.trim();
+        StringBuilder sb = new StringBuilder(trimmed.length());
+        boolean space = false;
+
+        for (int i = 0; i < trimmed.length(); i++) {
+            char ch = trimmed.charAt(i);
+            if (ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r') {
+                space = true;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append(ch);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    public void add(Customer customer) {
+        add(customer.getCustomerId(), customer.getName());
+    }
+
+    public synchronized void add(int customerId, String name) {
+        index.computeIfAbsent(normalize(name), k -> new LinkedHashSet<>()).add(customerId + "");
+    }
+
+    // Customer IDs whose name matches exactly (ignoring case and extra spaces)
+    public synchronized List<String> findExact(String name) {
+        Set<String> ids = index.get(normalize(name));
+        return ids == null ? List.of() : new ArrayList<>(ids);
+    }
+
+    // Customer IDs whose name starts with the given prefix, in name order
+    public synchronized List<String> findByPrefix(String prefix) {
+        String key = normalize(prefix);
+        List<String> result = new ArrayList<>();
+        if (key.isEmpty()) return result;
+
+        for (Set<String> ids : index.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+            result.addAll(ids);
+        }
+        return result;
+    }
+}
@@ -1,20 +1,131 @@
 package bank;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.*;
 
 public class DatabaseManager {
 
     private static DatabaseManager instance;
-    private final String CSV_FILE = "accounts.csv";
+
+    // Concurrent maps: lookups run on many threads without the manager's lock; changes to
+    // them are still made under it (see replace())
     private Map<String, Customer> customers;
+
+    // Where customers and accounts are persisted (-Dbank.storage, see StorageConfig)
+    private final AccountStore store;
+    private final MappedAccountTable table;   // the store, when it is the mapped table
+
+    // Mapped table: customers whose Account views have been created
+    private final Set<Integer> attachedCustomers = ConcurrentHashMap.newKeySet();
+
+    // Lazy loading (-Dbank.cache.customers, mapped table only): startup reads just the
+    // customer ids, file offsets and names. Customers and their Account views are read into
+    // this cache when used and dropped again when it evicts them; 'customers' then only holds
+    // customers added this session that have not been written yet.
+    private final TinyLfuCache<Integer, Customer> cache;
+
+    // accountNumber -> Account, kept in sync with every add/update/load
+    private final Map<String, Account> accountIndex = new ConcurrentHashMap<>();
+
+    // Every account's balance, type, status and owner as primitive columns, for reports
+    private final AccountColumns columns = new AccountColumns();
+
+    // Accounts changed since they were last written, in the order they were first changed.
+    // Several updates to one account before a flush are written as one record.
+    private final Set<Account> dirtyAccounts = new LinkedHashSet<>();
+    private boolean flushQueued;   // guarded by dirtyAccounts
+
+    private final PersistencePipeline pipeline = PersistencePipeline.getInstance();
+
+    // normalized customer name -> customer IDs, for teller search
+    private final CustomerNameIndex nameIndex = new CustomerNameIndex();
+
     private DatabaseManager() {
-        customers = loadCsv();
+        this(StorageConfig.accountStore());
+    }
+
+    DatabaseManager(AccountStore store) {
+        this.store = store;
+        this.table = store instanceof MappedAccountTable ? (MappedAccountTable) store : null;
+        int cacheSize = StorageConfig.customerCacheSize();
+        this.cache = table != null && cacheSize > 0 ? new TinyLfuCache<>(cacheSize, this::evicted) : null;
+
+        if (cache != null) {
+            customers = new ConcurrentHashMap<>();
+            try {
+                table.indexCustomers().forEach(nameIndex::add);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            try {
+                customers = new ConcurrentHashMap<>(store.load());
+            } catch (IOException e) {
+                e.printStackTrace();
+                customers = new ConcurrentHashMap<>();
+            }
+        }
+
+        if (table != null) {
+            table.mirrorTo(columns);
+        }
+
+        if (cache != null) {
+            // Nothing else to do until customers are asked for
+        } else if (table != null) {
+            // Only customers are loaded; Account views are created per customer the
+            // first time one of its accounts is asked for
+            for (Customer customer : customers.values()) {
+                nameIndex.add(customer);
+            }
+        } else {
+            indexAll(customers);
+        }
 
-        // If CSV has no customers at all, load sample data
-        if (customers.isEmpty()) {
+        // If the store has no customers at all, load sample data
+        if (customers.isEmpty() && (cache == null || table.customerCount() == 0)) {
             loadSampleData();
         }
+
+        pipeline.addSyncHook(this::syncFiles);
+        pipeline.addShutdownHook(this::closeFiles);
+    }
+
+    // In-memory instance over an already built customer map (no files are read or written).
+    // Used by the benchmarks.
+    DatabaseManager(Map<String, Customer> customers) {
+        this(new MemoryAccountStore(customers));
+    }
+
+    private void indexAll(Map<String, Customer> customers) {
+        for (Customer customer : customers.values()) {
+            nameIndex.add(customer);
+            for (Account acc : customer.getAccounts()) {
+                indexLoaded(acc);
+            }
+        }
+    }
+
+    // Index an account read from storage; it matches what is stored, so it starts clean
+    private void indexLoaded(Account acc) {
+        accountIndex.put(acc.getAccountNumber(), acc);
+        addColumns(acc);
+        acc.markClean();
+    }
+
+    // Give a heap account its row in the columns (table accounts already have theirs: the slot)
+    private void addColumns(Account acc) {
+        if (table != null || acc.columnRow() >= 0) return;
+        int row = columns.add(acc.getCustomer().getCustomerId(), acc.getType(),
+                acc.getBalanceCents(), AccountColumns.status(acc.getStatus()));
+        acc.attachColumns(columns, row);
+    }
+
+    // Balances, types, statuses and owners of every account as primitive columns, for
+    // bank-wide totals without going through Account objects
+    public AccountColumns balanceColumns() {
+        return columns;
     }
 
     public static synchronized DatabaseManager getInstance() {
@@ -26,141 +137,352 @@ public class DatabaseManager {
 
     // Retrieve a single account by ID
     public Account getAccountByNumber(String accountNumber) {
-        for (Customer customer : customers.values()) {
-            for (Account acc : customer.getAccounts()) {
-                if (acc.getAccountNumber().equals(accountNumber)) {
-                    return acc;
-                }
+        if (accountNumber == null) return null;
+        if (cache != null) {
+            // Through the owner, so the cache sees the use
+            int slot = table.find(accountNumber);
+            if (slot < 0) return accountIndex.get(accountNumber);   // added, not written yet
+            Customer owner = lookup(table.customerId(slot) + "");
+            return owner == null ? null : findAccount(owner, accountNumber);
+        }
+
+        Account account = accountIndex.get(accountNumber);
+        if (account == null && table != null) {
+            int slot = table.find(accountNumber);
+            if (slot >= 0) {
+                attachAccounts(customers.get(table.customerId(slot) + ""));
+                account = accountIndex.get(accountNumber);
             }
         }
+        return account;
+    }
+
+    private static Account findAccount(Customer customer, String accountNumber) {
+        for (Account acc : customer.getAccounts()) {
+            if (acc.getAccountNumber().equals(accountNumber)) return acc;
+        }
         return null;
     }
 
     public List<Account> retrieveAllAccounts() {
         List<Account> all = new ArrayList<>();
 
-        for (Customer customer : customers.values()) {
+        for (String id : allCustomerIds()) {
+            Customer customer = lookup(id);
+            if (customer == null) continue;
+            attachAccounts(customer);
             all.addAll(customer.getAccounts());
         }
 
         return all;
     }
 
-    // Replace an account in the list
+    private Collection<String> allCustomerIds() {
+        if (cache == null) return new ArrayList<>(customers.keySet());
+
+        Set<String> ids = new LinkedHashSet<>();
+        for (int id : table.customerIds()) {
+            ids.add(id + "");
+        }
+        ids.addAll(customers.keySet());
+        return ids;
+    }
+
+    // The customer, read into the cache first when loading lazily
+    private Customer lookup(String customerId) {
+        Customer customer = customerId == null ? null : customers.get(customerId);
+        if (customer != null || cache == null || customerId == null) return customer;
+
+        try {
+            return cache.get(Integer.parseInt(customerId.trim()), this::readCustomer);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Cache loader: the customer with a fresh Account view per slot
+    private Customer readCustomer(int customerId) {
+        try {
+            Customer customer = table.readCustomer(customerId);
+            if (customer == null) return null;
+
+            for (int slot : table.slotsOf(customerId)) {
+                Account account = newAccount(customer, table.type(slot), 0);
+                account.setAccountNumber(table.accountNumber(slot));
+                account.attach(table, slot);
+                account.markClean();
+                customer.addAccount(account);
+            }
+            synchronized (this) {
+                for (Account acc : customer.getAccounts()) {
+                    accountIndex.put(acc.getAccountNumber(), acc);
+                }
+            }
+            return customer;
+        } catch (IOException e) {
+            System.out.println("Error reading customer " + customerId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Cache eviction: balances and status already live in the mapped table, but accounts
+    // without a slot yet are written now so the next read of the customer finds them
+    private void evicted(Integer customerId, Customer customer) {
+        for (Account acc : customer.getAccounts()) {
+            if (!acc.isAttached()) logAccount(acc);
+        }
+        synchronized (this) {
+            for (Account acc : customer.getAccounts()) {
+                accountIndex.remove(acc.getAccountNumber(), acc);
+            }
+        }
+    }
+
+    // Hit, miss and eviction counts of the lazy loading cache, or null when everything is loaded
+    public CacheMetrics cacheMetrics() {
+        return cache == null ? null : cache.metrics();
+    }
+
+    // Replace an account in the list and persist it if it changed
+    // The write itself happens on the persistence pipeline's thread
     public void updateAccount(Account updated) {
-        for (Customer customer : customers.values()) {
-            List<Account> list = customer.getAccounts();
+        // Outside the lock: a full queue blocks in markDirty until the writer (which may need the lock) catches up
+        if (replace(updated)) {
+            markDirty(updated);
+        }
+    }
+
+    // Like updateAccount for several accounts that must reach disk as one unit, such as both
+    // legs of a transfer: after a crash either every change is found or none of them is
+    public void updateAccounts(Account... changed) {
+        // A set: a batch can hand in many thousands of accounts, and each is looked up once
+        Set<Account> unit = new LinkedHashSet<>();
+        for (Account acc : changed) {
+            if (acc != null && !unit.contains(acc) && replace(acc)) unit.add(acc);
+        }
+
+        if (unit.size() <= 1) {
+            for (Account acc : unit) markDirty(acc);
+            return;
+        }
 
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getAccountNumber().equals(updated.getAccountNumber())) {
-                    list.set(i, updated);
-                    saveCsv();
-                    return;
+        // Written by the unit below, not separately by a flush. The unit holds the states as
+        // of now, so a later change still in progress can't slip into it half done.
+        List<Account> states = new ArrayList<>(unit.size());
+        synchronized (dirtyAccounts) {
+            for (Account acc : unit) {
+                dirtyAccounts.remove(acc);
+                acc.markClean();
+                states.add(acc.isAttached() ? acc : copyOf(acc));
+            }
+        }
+        pipeline.submit(() -> writeTogether(states));
+    }
+
+    private static Account copyOf(Account acc) {
+        Account copy = newAccount(acc.getCustomer(), acc.getType(), acc.getBalance());
+        copy.setAccountNumber(acc.getAccountNumber());
+        copy.setStatus(acc.getStatus());
+        return copy;
+    }
+
+    // Put the account in the maps; false if there is nothing to persist
+    private boolean replace(Account updated) {
+        // Changes to the maps are serialized with checkpoint(), which iterates them
+        synchronized (this) {
+            Account current = accountIndex.get(updated.getAccountNumber());
+
+            // Same instance with nothing changed since it was last written (e.g. a repeated call)
+            if (current == updated && !updated.isDirty()) return false;
+
+            if (current == null) {
+                // Accounts added straight to a known customer (customer.addAccount) are picked up here
+                Customer owner = updated.getCustomer();
+                if (owner == null || lookup(owner.getCustomerId() + "") != owner
+                        || !owner.getAccounts().contains(updated)) {
+                    return false;
+                }
+            } else if (current != updated) {
+                List<Account> list = current.getCustomer().getAccounts();
+                list.set(list.indexOf(current), updated);
+
+                // The replacement takes over the account's row
+                if (table == null && current.columnRow() >= 0 && updated.columnRow() < 0) {
+                    updated.attachColumns(columns, current.columnRow());
                 }
             }
+
+            accountIndex.put(updated.getAccountNumber(), updated);
+            addColumns(updated);
+            return true;
         }
     }
 
     // Add new account
     public void addAccount(String customerId, Account account) {
 
-        Customer customer = customers.get(customerId);
+        Customer customer = lookup(customerId);
         if (customer == null) {
             System.out.println("❌ Customer not found: " + customerId);
             return;
         }
+        attachAccounts(customer);
 
-        customer.addAccount(account);
-        saveCsv();
+        synchronized (this) {
+            customer.addAccount(account);
+            accountIndex.put(account.getAccountNumber(), account);
+            addColumns(account);
+        }
+        markDirty(account);
     }
 
-    // Load data from CSV
-    public Map<String, Customer> loadCsv() {
-        Map<String, Customer> customers = new HashMap<>();
+    // Add the account to the dirty set and make sure a flush is queued.
+    // Only one flush is queued at a time, so a burst of updates to one account is written once.
+    private void markDirty(Account account) {
+        account.markDirty();
+        synchronized (dirtyAccounts) {
+            dirtyAccounts.add(account);
+            if (flushQueued) return;
+            flushQueued = true;
+        }
+        pipeline.submit(this::flushDirty);
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader("accounts.csv"))) {
+    // Accounts changed without an updateAccount call are still flagged dirty
+    private void queueStrays() {
+        synchronized (dirtyAccounts) {
+            for (Account acc : accountIndex.values()) {
+                if (acc.isDirty()) dirtyAccounts.add(acc);
+            }
+        }
+    }
 
-            String line;
-            boolean firstLine = true;
+    // Write every account in the dirty set once, then clear it
+    public void flushDirty() {
+        writeDirty();
+        checkpointIfNeeded();
+    }
 
-            while ((line = br.readLine()) != null) {
+    private void writeDirty() {
+        List<Account> batch;
+        synchronized (dirtyAccounts) {
+            flushQueued = false;
+            if (dirtyAccounts.isEmpty()) return;
+            batch = new ArrayList<>(dirtyAccounts);
+            dirtyAccounts.clear();
+        }
 
-                // Skip header row
-                if (firstLine) {
-                    firstLine = false;
-                    continue;
-                }
+        // Clear first: a change made while writing marks it dirty again
+        for (Account account : batch) {
+            account.markClean();
+        }
 
-                // Split CSV row
-                String[] row = line.split(",");
+        try {
+            store.writeAccounts(batch);
+        } catch (IOException | RuntimeException e) {
+            // One bad account should not cost the rest of the batch
+            System.out.println("Error writing accounts: " + e.getMessage() + ", retrying one by one");
+            for (Account account : batch) {
+                logAccount(account);
+            }
+        }
+    }
 
-                if (row.length < 7) {  // CHANGED: Now expecting 7 columns instead of 6
-                    System.err.println("Invalid row skipped: " + line);
-                    continue;
-                }
+    private void writeTogether(List<Account> unit) {
+        try {
+            store.writeTogether(unit, null);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error writing " + unit.size() + " accounts together: " + e.getMessage());
+        }
+        checkpointIfNeeded();
+    }
 
-                String customerId   = row[0].trim();
-                String name         = row[1].trim();
-                String password     = row[2].trim();
-                String accountNumber = row[3].trim();
-                AccountType type     = AccountType.valueOf(row[4].trim());
-                double balance       = Double.parseDouble(row[5].trim());
-                String status        = row[6].trim();  // NEW: Read status
-
-                // Retrieve or create the customer
-                Customer customer = customers.get(customerId);
-                if (customer == null) {
-                    customer = new Customer(Integer.parseInt(customerId), name, password);
-                    customers.put(customerId, customer);
-                }
+    // Mapped table: create the customer's Account views, once
+    private synchronized void attachAccounts(Customer customer) {
+        if (table == null || cache != null || customer == null || !attachedCustomers.add(customer.getCustomerId())) return;
 
-                // Create the account
-                Account account = switch (type) {
-                    case CARD     -> new Card(customer, balance);
-                    case CHECK    -> new Check(customer, balance);
-                    case CHECKING -> new Checking(customer, balance);
-                    case SAVING   -> new Saving(customer, balance);
-                };
+        for (int slot : table.slotsOf(customer.getCustomerId())) {
+            String accountNumber = table.accountNumber(slot);
+            if (accountIndex.containsKey(accountNumber)) continue;
 
-                account.setAccountNumber(accountNumber);
-                account.setStatus(status);  // NEW: Set status from CSV
+            Account account = newAccount(customer, table.type(slot), 0);
+            account.setAccountNumber(accountNumber);
+            account.attach(table, slot);
+            customer.addAccount(account);
+            indexLoaded(account);
+        }
+    }
 
-                // Add account to customer
-                customer.addAccount(account);
-            }
+    static Account newAccount(Customer customer, AccountType type, double balance) {
+        return switch (type) {
+            case CARD     -> new Card(customer, balance);
+            case CHECK    -> new Check(customer, balance);
+            case CHECKING -> new Checking(customer, balance);
+            case SAVING   -> new Saving(customer, balance);
+        };
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    private void logAccount(Account account) {
+        try {
+            store.writeAccount(account);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error writing account " + account.getAccountNumber() + ": " + e.getMessage());
         }
+    }
 
-        return customers;
+    private void logCustomer(Customer customer) {
+        try {
+            store.writeCustomer(customer);
+        } catch (IOException e) {
+            System.out.println("Error writing customer " + customer.getCustomerId() + ": " + e.getMessage());
+        }
+        if (table != null) attachedCustomers.add(customer.getCustomerId());
+        for (Account acc : customer.getAccounts()) {
+            logAccount(acc);
+        }
     }
 
-    // Save data to CSV
-    private void saveCsv() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(CSV_FILE))) {
+    private void checkpointIfNeeded() {
+        if (store.needsCheckpoint()) {
+            checkpoint();
+        }
+    }
 
-            // Write correct header with status column
-            writer.println("customerId,customerName,password,accountNumber,accountType,balance,status");
+    // fsync whatever the account changes were written to (PersistencePipeline.awaitDurable)
+    private void syncFiles() {
+        try {
+            store.sync();
+        } catch (IOException e) {
+            System.out.println("Error syncing account files: " + e.getMessage());
+        }
+    }
 
-            // Loop through all customers and their accounts
-            for (Customer c : customers.values()) {
-                for (Account acc : c.getAccounts()) {
+    // Runs on shutdown, after the pipeline has drained
+    private synchronized void closeFiles() {
+        try {
+            queueStrays();
+            writeDirty();
+            store.saveImage(customers.values());
+        } catch (IOException e) {
+            System.out.println("Error writing account image: " + e.getMessage());
+        }
+        try {
+            store.close();
+        } catch (IOException e) {
+            System.out.println("Error closing account files: " + e.getMessage());
+        }
+    }
 
-                    writer.println(String.format("%s,%s,%s,%s,%s,%.2f,%s",
-                            c.getCustomerId(),
-                            c.getName(),
-                            c.getPassword(),
-                            acc.getAccountNumber(),
-                            acc.type.toString(),   // account type (CARD, CHECK, etc.)
-                            acc.getBalance(),
-                            acc.getStatus()        // NEW: Save status (ACTIVE or FROZEN)
-                    ));
-                }
-            }
+    // Write out every pending change, then let the store fold its log into a snapshot
+    // (csv), compact it (log) or just force it to disk (binary, mapped)
+    public synchronized void checkpoint() {
+        queueStrays();
+        writeDirty();
 
+        try {
+            store.checkpoint(customers.values());
         } catch (IOException e) {
-            System.out.println("Error writing CSV: " + e.getMessage());
+            System.out.println("Error checkpointing accounts: " + e.getMessage());
         }
     }
 
@@ -212,8 +534,23 @@ public class DatabaseManager {
         customers.put("2", c2);
         customers.put("3", c3);
 
-        // Save all to CSV
-        saveCsv();
+        nameIndex.add(c1);
+        nameIndex.add(c2);
+        nameIndex.add(c3);
+
+        for (Account acc : List.of(j1, j2, j3, a1, b1, b2)) {
+            indexLoaded(acc);   // written out below
+        }
+
+        // Save all to the store, then start it from a clean snapshot
+        for (Customer c : List.of(c1, c2, c3)) {
+            logCustomer(c);
+        }
+        try {
+            store.checkpoint(customers.values());
+        } catch (IOException e) {
+            System.out.println("Error writing account files: " + e.getMessage());
+        }
 
         System.out.println("Sample data loaded successfully.");
     }
@@ -236,26 +573,83 @@ public class DatabaseManager {
         return "ACC" + (max + 1);
     }
     public Customer getCustomer(String customerId) {
-        return customers.get(customerId);
+        Customer customer = lookup(customerId);
+        attachAccounts(customer);
+        return customer;
     }
     public String generateNextCustomerId() {
         int max = 0;
-        for (String id : customers.keySet()) {
+        for (String id : allCustomerIds()) {
             int val = Integer.parseInt(id);
             if (val > max) max = val;
         }
         return "" + (max + 1);
     }
     public void addCustomer(Customer customer) {
-        customers.put(customer.getCustomerId()+"", customer);
-        saveCsv();
+        synchronized (this) {
+            customers.put(customer.getCustomerId() + "", customer);
+            nameIndex.add(customer);
+            for (Account acc : customer.getAccounts()) {
+                accountIndex.put(acc.getAccountNumber(), acc);
+                addColumns(acc);
+            }
+        }
+
+        pipeline.submit(() -> {
+            for (Account acc : customer.getAccounts()) {
+                acc.markClean();
+            }
+            logCustomer(customer);
+
+            // Written: from now on it can be read back, so it no longer has to stay in memory
+            if (cache != null) {
+                synchronized (this) {
+                    customers.remove(customer.getCustomerId() + "");
+                }
+                cache.put(customer.getCustomerId(), customer);
+            }
+        });
     }
     public Customer getCustomerByName(String name) {
-        for (Customer c : customers.values()) {
-            if (c.getName().equalsIgnoreCase(name)) {
-                return c;
-            }
+        List<Customer> matches = getCustomersByName(name);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    // All customers with this name (case-insensitive)
+    public List<Customer> getCustomersByName(String name) {
+        return resolveCustomers(nameIndex.findExact(name));
+    }
+
+    // All customers whose name starts with the prefix (case-insensitive)
+    public List<Customer> getCustomersByNamePrefix(String prefix) {
+        return resolveCustomers(nameIndex.findByPrefix(prefix));
+    }
+
+    // Accounts owned by customers with this name (case-insensitive)
+    public List<Account> getAccountsByCustomerName(String name) {
+        List<Account> accounts = new ArrayList<>();
+        for (Customer c : getCustomersByName(name)) {
+            accounts.addAll(c.getAccounts());
         }
-        return null;
+        return accounts;
+    }
+
+    // Accounts owned by customers whose name starts with the prefix
+    public List<Account> getAccountsByCustomerNamePrefix(String prefix) {
+        List<Account> accounts = new ArrayList<>();
+        for (Customer c : getCustomersByNamePrefix(prefix)) {
+            accounts.addAll(c.getAccounts());
+        }
+        return accounts;
+    }
+
+    private List<Customer> resolveCustomers(List<String> customerIds) {
+        List<Customer> result = new ArrayList<>();
+        for (String id : customerIds) {
+            Customer c = lookup(id);
+            attachAccounts(c);
+            if (c != null) result.add(c);
+        }
+        return result;
     }
 }
@@ -0,0 +1,209 @@
+package bank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+// Append-only writer that keeps one FileChannel open and commits records in groups.
+// Callers enqueue a record and get back the file offset it will be written at; a single
+// background flusher drains whatever has queued up since its last pass and writes it
+// with one gathering write, so concurrent writers share one write (and one fsync).
+public class GroupCommitWriter implements Closeable {
+
+    public enum Durability {
+        SYNC,       // fsync before append() returns
+        INTERVAL,   // fsync at most every syncIntervalMs; append() never waits
+        OS;         // leave it to the OS page cache
+
+        public static Durability parse(String value, Durability fallback) {
+            if (value == null) return fallback;
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown durability '" + value + "', using " + fallback);
+                return fallback;
+            }
+        }
+    }
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final long syncIntervalMs;
+    private final Thread flusher;
+
+    // Guarded by 'this'
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    private long nextOffset;      // end of file once everything queued is written
+    private long writtenOffset;   // end of what has reached the channel
+    private long syncedOffset;    // end of what has been fsynced
+    private boolean syncWanted;   // someone is waiting in sync()
+    private IOException failure;
+    private boolean closed;
+
+    public GroupCommitWriter(String file, Durability durability, long syncIntervalMs) throws IOException {
+        this.channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.durability = durability;
+        this.syncIntervalMs = Math.max(1, syncIntervalMs);
+
+        this.nextOffset = channel.size();
+        this.writtenOffset = nextOffset;
+        this.syncedOffset = nextOffset;
+
+        this.flusher = new Thread(this::flushLoop, "group-commit-" + Paths.get(file).getFileName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    // Queue one record. Returns the offset the record starts at in the file.
+    // With SYNC durability this waits until the record's group has been fsynced.
+    public long append(byte[] record) throws IOException {
+        long offset;
+        synchronized (this) {
+            if (closed) throw new IOException("Writer is closed");
+            if (failure != null) throw failure;
+
+            offset = nextOffset;
+            nextOffset += record.length;
+            queue.add(ByteBuffer.wrap(record));
+            notifyAll();
+        }
+
+        if (durability == Durability.SYNC) {
+            awaitSynced(offset + record.length);
+        }
+        return offset;
+    }
+
+    // Offset the next appended record will start at
+    public synchronized long size() {
+        return nextOffset;
+    }
+
+    // Wait until everything appended so far has been written to the file (not necessarily fsynced).
+    // Readers call this before reading the file back.
+    public void flush() throws IOException {
+        long target;
+        synchronized (this) {
+            target = nextOffset;
+            while (writtenOffset < target && failure == null && !closed) {
+                waitQuietly();
+            }
+            if (failure != null) throw failure;
+        }
+    }
+
+    // Wait until everything appended so far is on disk
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = nextOffset;
+        }
+        awaitSynced(target);
+    }
+
+    private synchronized void awaitSynced(long target) throws IOException {
+        if (syncedOffset < target) {
+            syncWanted = true;
+            notifyAll(); // wake the flusher early
+        }
+        while (syncedOffset < target && failure == null && !closed) {
+            waitQuietly();
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void waitQuietly() {
+        try {
+            wait(syncIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        long lastSync = System.currentTimeMillis();
+
+        while (true) {
+            ByteBuffer[] batch;
+            long batchEnd;
+            boolean syncRequested;
+
+            synchronized (this) {
+                while (queue.isEmpty() && !closed && !syncWanted && !syncDue(lastSync)) {
+                    waitQuietly();
+                }
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+                batch = queue.toArray(new ByteBuffer[0]);
+                queue.clear();
+                batchEnd = nextOffset;
+                syncRequested = durability == Durability.SYNC || syncWanted || syncDue(lastSync);
+                syncWanted = false;
+            }
+
+            try {
+                while (hasRemaining(batch)) {
+                    channel.write(batch);
+                }
+                if (syncRequested) {
+                    channel.force(false);
+                    lastSync = System.currentTimeMillis();
+                }
+
+                synchronized (this) {
+                    writtenOffset = batchEnd;
+                    if (syncRequested) syncedOffset = batchEnd;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                System.out.println("Error writing " + flusher.getName() + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // INTERVAL mode: unsynced data older than the interval should be forced out
+    private boolean syncDue(long lastSync) {
+        return durability == Durability.INTERVAL
+                && syncedOffset < nextOffset
+                && System.currentTimeMillis() - lastSync >= syncIntervalMs;
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer b : buffers) {
+            if (b.hasRemaining()) return true;
+        }
+        return false;
+    }
+
+    // Writes out and fsyncs everything still queued, then closes the file
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package bank;
+
+import lombok.Getter;
+
+// Counters of one TransactionImporter run
+@Getter
+public class ImportResult {
+    private final long rows;
+    private final long applied;
+    private final long rejected;       // by validation or when applied (e.g. insufficient funds)
+    private final long elapsedNanos;
+
+    public ImportResult(long rows, long applied, long rejected, long elapsedNanos) {
+        this.rows = rows;
+        this.applied = applied;
+        this.rejected = rejected;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double getRowsPerMinute() {
+        return elapsedNanos == 0 ? 0 : rows * 60e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows in %.1f s (%.0f rows/min): %d applied, %d rejected",
+                rows, elapsedNanos / 1e9, getRowsPerMinute(), applied, rejected);
+    }
+}
@@ -0,0 +1,88 @@
+package bank;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Predicate;
+
+// Log-structured backend: accounts.journal is the only file. Every change is appended as an
+// AccountLog record and startup replays the whole journal. When the journal holds more than
+// twice as many records as there are live customers and accounts (and at least
+// MIN_COMPACT_RECORDS), a checkpoint compacts it to one record per customer and account.
+public class LogAccountStore implements AccountStore {
+
+    public static final String JOURNAL_FILE = "accounts.journal";
+
+    private static final int MIN_COMPACT_RECORDS = 1000;
+
+    private final AccountLog journal;
+    private final Predicate<String> committed;   // transfer ids whose GROUP records count
+    private int liveRecords;
+
+    public LogAccountStore() {
+        this(JOURNAL_FILE);
+    }
+
+    public LogAccountStore(String journalFile) {
+        this(journalFile, id -> true);
+    }
+
+    // One shard of a ShardedAccountStore; committed answers for its TransferLog
+    public LogAccountStore(String journalFile, Predicate<String> committed) {
+        this.journal = new AccountLog(journalFile);
+        this.committed = committed;
+    }
+
+    @Override
+    public Map<String, Customer> load() {
+        Map<String, Customer> customers = new HashMap<>();
+        journal.replayInto(customers, new HashMap<>(), committed);
+        liveRecords = countRecords(customers.values());
+        return customers;
+    }
+
+    @Override
+    public void writeAccount(Account account) throws IOException {
+        journal.appendAccount(account);
+    }
+
+    @Override
+    public void writeTogether(List<Account> accounts, String transferId) throws IOException {
+        journal.appendGroup(accounts, transferId);
+    }
+
+    @Override
+    public void writeCustomer(Customer customer) throws IOException {
+        journal.appendCustomer(customer);
+    }
+
+    @Override
+    public boolean needsCheckpoint() {
+        int size = journal.size();
+        return size >= MIN_COMPACT_RECORDS && size > 2 * liveRecords;
+    }
+
+    // Compaction: rewrite the journal with only the current state
+    @Override
+    public void checkpoint(Collection<Customer> customers) throws IOException {
+        journal.rewrite(customers);
+        liveRecords = countRecords(customers);
+    }
+
+    private static int countRecords(Collection<Customer> customers) {
+        int n = 0;
+        for (Customer c : customers) {
+            n += 1 + c.getAccounts().size();
+        }
+        return n;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        journal.sync();
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+}
@@ -0,0 +1,111 @@
+package bank;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Log-structured teller backend: tellers.journal holds one line per change,
+//   TELLER,employeeId,name,email,password   or   REMOVE,employeeId
+// and is replayed at startup. A journal with many more lines than tellers is
+// compacted at load time.
+public class LogTellerStore implements TellerStore {
+
+    public static final String JOURNAL_FILE = "tellers.journal";
+
+    private static final String TELLER = "TELLER";
+    private static final String REMOVE = "REMOVE";
+    private static final int MIN_COMPACT_LINES = 100;
+
+    private final String journalFile;
+
+    public LogTellerStore() {
+        this(JOURNAL_FILE);
+    }
+
+    public LogTellerStore(String journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    @Override
+    public synchronized Map<String, Teller> load() {
+        Map<String, Teller> map = new LinkedHashMap<>();
+        int lines = 0;
+
+        try (CsvTokenizer csv = new CsvTokenizer(new FileInputStream(journalFile))) {
+            while (csv.nextRow()) {
+                lines++;
+                String kind = csv.getString(0);
+
+                if (TELLER.equals(kind) && csv.fieldCount() >= 5) {
+                    String id = csv.getString(1);
+                    map.put(id, new Teller(id, csv.getString(2), csv.getString(3), csv.getString(4)));
+                } else if (REMOVE.equals(kind) && csv.fieldCount() >= 2) {
+                    map.remove(csv.getString(1));
+                } else {
+                    System.err.println("Invalid teller journal line skipped: " + csv.rowText());
+                }
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("No " + journalFile + " found, starting empty");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        if (lines >= MIN_COMPACT_LINES && lines > 2 * map.size()) {
+            compact(map.values());
+        }
+        return map;
+    }
+
+    @Override
+    public synchronized void put(Teller t, Collection<Teller> all) {
+        append(String.format("%s,%s,%s,%s,%s",
+                TELLER,
+                t.getEmployeeId(),
+                t.getName(),
+                t.getEmail(),
+                t.getPassword()
+        ));
+    }
+
+    @Override
+    public synchronized void remove(String employeeId, Collection<Teller> all) {
+        append(REMOVE + "," + employeeId);
+    }
+
+    private void append(String line) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(journalFile, true))) {
+            writer.println(line);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Rewrite the journal with one TELLER line per live teller
+    private void compact(Collection<Teller> tellers) {
+        Path target = Paths.get(journalFile);
+        Path temp = Paths.get(journalFile + ".tmp");
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temp))) {
+            for (Teller t : tellers) {
+                writer.println(String.format("%s,%s,%s,%s,%s",
+                        TELLER,
+                        t.getEmployeeId(),
+                        t.getName(),
+                        t.getEmail(),
+                        t.getPassword()
+                ));
+            }
+            if (writer.checkError()) throw new IOException("Error writing " + temp);
+        } catch (IOException e) {
+            System.out.println("Error compacting teller journal: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Error compacting teller journal: " + e.getMessage());
+        }
+    }
+}
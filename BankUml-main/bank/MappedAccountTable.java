@@ -0,0 +1,378 @@
+package bank;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+// accounts.dat (BinaryAccountStore layout) mapped into memory, for deployments with more
+// accounts than fit comfortably on the heap.
+// Balance and status live only in the mapping: an Account attached to a slot reads and
+// writes them there, and the OS writes the pages back. Apart from the mapping the table
+// keeps two int arrays, an open-addressing hash of account number -> slot and a per-customer
+// chain of slots, so Account objects are only created when something asks for them.
+//
+// Balances are 8-byte aligned longs (cents) and are updated with atomic VarHandle
+// operations directly on the mapping. A mapping can't pass 2 GB, i.e. about 53M accounts.
+//
+// For lazy loading (-Dbank.cache.customers) the table can also index customers.dat, so a
+// single customer can be read by id instead of loading them all.
+public class MappedAccountTable implements AccountStore, Closeable {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final int RECORD_SIZE = BinaryAccountStore.RECORD_SIZE;
+    private static final int HEADER_SIZE = BinaryAccountStore.HEADER_SIZE;
+    private static final int GROW_RECORDS = 1 << 16;
+
+    private final Path accountsFile;
+    private final Path customersFile;
+    private final FileChannel channel;
+    private final DataOutputStream customerOut;
+    private final long customersBase;   // size of customers.dat before customerOut appended to it
+    private FileChannel customerReader;
+
+    // Replaced (never modified in place) when the file grows, so readers need no lock
+    private volatile MappedByteBuffer map;
+
+    // Guarded by 'this'
+    private int count;
+    private int[] hash;            // slot + 1, or 0 for an empty bucket
+    private int[] previousSlot;    // previous slot of the same customer, or -1
+    private final Map<Integer, Integer> lastSlot = new HashMap<>();   // customerId -> newest slot
+    private Map<Integer, Long> customerOffsets;   // customerId -> newest record, once indexCustomers() ran
+    private volatile AccountColumns columns;   // kept current with row = slot, once mirrorTo() ran
+
+    public MappedAccountTable(String accountsFile, String customersFile) throws IOException {
+        this.accountsFile = Paths.get(accountsFile);
+        this.customersFile = Paths.get(customersFile);
+
+        // Let BinaryAccountStore create or validate both files
+        new BinaryAccountStore(accountsFile, customersFile).close();
+
+        channel = FileChannel.open(this.accountsFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        count = (int) Math.min(header.getInt(BinaryAccountStore.COUNT_OFFSET),
+                (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+
+        map = mapFor(count + GROW_RECORDS);
+        hash = new int[Math.max(16, Integer.highestOneBit(Math.max(1, count) * 2) * 2)];
+        previousSlot = new int[Math.max(16, count)];
+
+        for (int slot = 0; slot < count; slot++) {
+            link(slot);
+        }
+
+        customersBase = Files.size(this.customersFile);
+        customerOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.customersFile,
+                StandardOpenOption.APPEND)));
+    }
+
+    private MappedByteBuffer mapFor(long records) throws IOException {
+        long bytes = HEADER_SIZE + records * RECORD_SIZE;
+        if (bytes > Integer.MAX_VALUE) {
+            bytes = HEADER_SIZE + (long) ((Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) * RECORD_SIZE;
+            if (bytes < HEADER_SIZE + (long) count * RECORD_SIZE + RECORD_SIZE) {
+                throw new IOException("Account table full: " + accountsFile);
+            }
+        }
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+    }
+
+    private static int base(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    // Customers from customers.dat, without accounts: DatabaseManager attaches
+    // Account views to a customer the first time it is used
+    @Override
+    public Map<String, Customer> load() throws IOException {
+        synchronized (this) {
+            customerOut.flush();
+        }
+        return BinaryAccountStore.readCustomers(customersFile);
+    }
+
+    @Override
+    public synchronized void writeCustomer(Customer customer) throws IOException {
+        long offset = customersBase + customerOut.size();
+        BinaryAccountStore.writeCustomer(customerOut, customer);
+        customerOut.flush();
+        if (customerOffsets != null) customerOffsets.put(customer.getCustomerId(), offset);
+    }
+
+    // Lazy loading: read customers.dat once, remembering where each customer's newest record
+    // is. Returns customerId -> name, for the name index.
+    public synchronized Map<Integer, String> indexCustomers() throws IOException {
+        customerOut.flush();
+        customerOffsets = new HashMap<>();
+        Map<Integer, String> names = new HashMap<>();
+
+        try (CountingInput counter = new CountingInput(new BufferedInputStream(Files.newInputStream(customersFile)));
+             DataInputStream in = new DataInputStream(counter)) {
+            in.readInt();   // magic and version, checked when the file was opened
+            in.readInt();
+            while (true) {
+                long offset = counter.count;
+                int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                String name = in.readUTF();
+                in.readUTF();
+                customerOffsets.put(id, offset);
+                names.put(id, name);
+            }
+        } catch (EOFException e) {
+            System.out.println("Truncated customer record ignored in " + customersFile);
+        }
+        return names;
+    }
+
+    // One customer (without accounts) from customers.dat, or null. Needs indexCustomers().
+    public synchronized Customer readCustomer(int customerId) throws IOException {
+        Long offset = customerOffsets.get(customerId);
+        if (offset == null) return null;
+
+        customerOut.flush();
+        if (customerReader == null) customerReader = FileChannel.open(customersFile, StandardOpenOption.READ);
+        customerReader.position(offset);
+        // Not closed: that would close the channel
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(customerReader), 512));
+        if (in.readInt() != customerId) throw new IOException("Customer index out of date for " + customerId);
+        return new Customer(customerId, in.readUTF(), in.readUTF());
+    }
+
+    // Ids of every customer in customers.dat. Needs indexCustomers().
+    public synchronized List<Integer> customerIds() {
+        return new ArrayList<>(customerOffsets.keySet());
+    }
+
+    public synchronized int customerCount() {
+        return customerOffsets.size();
+    }
+
+    private static class CountingInput extends FilterInputStream {
+        long count;
+
+        CountingInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    // Attached accounts are already written through; a new account gets a slot
+    @Override
+    public void writeAccount(Account account) throws IOException {
+        if (!account.isAttached()) {
+            account.attach(this, append(account));
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // Slot of the account, or -1
+    public synchronized int find(String accountNumber) {
+        int mask = hash.length - 1;
+        for (int i = spread(accountNumber.hashCode()) & mask; hash[i] != 0; i = (i + 1) & mask) {
+            if (numberEquals(hash[i] - 1, accountNumber)) return hash[i] - 1;
+        }
+        return -1;
+    }
+
+    // Slots of the customer's accounts, oldest first
+    public synchronized int[] slotsOf(int customerId) {
+        Integer last = lastSlot.get(customerId);
+        if (last == null) return new int[0];
+
+        int n = 0;
+        for (int s = last; s >= 0; s = previousSlot[s]) n++;
+        int[] slots = new int[n];
+        for (int s = last; s >= 0; s = previousSlot[s]) slots[--n] = s;
+        return slots;
+    }
+
+    // Copy a new account into the next slot
+    public synchronized int append(Account account) throws IOException {
+        if (find(account.getAccountNumber()) >= 0) {
+            throw new IllegalArgumentException("Account already exists: " + account.getAccountNumber());
+        }
+
+        if ((long) base(count + 1) > map.capacity()) {
+            map = mapFor(count + Math.max(GROW_RECORDS, count / 2));
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        BinaryAccountStore.encode(account, record);
+        map.put(base(count), record.array());
+
+        int slot = count++;
+        map.putInt(BinaryAccountStore.COUNT_OFFSET, count);
+        link(slot);
+        if (columns != null) mirror(columns, slot);
+        return slot;
+    }
+
+    // Add the slot to the hash and to its customer's chain
+    private void link(int slot) {
+        if ((slot + 1) * 2 > hash.length) {
+            int[] old = hash;
+            hash = new int[old.length * 2];
+            for (int e : old) {
+                if (e != 0) insert(e - 1);
+            }
+        }
+        insert(slot);
+
+        if (slot >= previousSlot.length) {
+            previousSlot = Arrays.copyOf(previousSlot, Math.max(slot + 1, previousSlot.length * 2));
+        }
+        Integer last = lastSlot.put(customerId(slot), slot);
+        previousSlot[slot] = last == null ? -1 : last;
+    }
+
+    private void insert(int slot) {
+        int mask = hash.length - 1;
+        int i = spread(numberHash(slot)) & mask;
+        while (hash[i] != 0) i = (i + 1) & mask;
+        hash[i] = slot + 1;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // Same value as String.hashCode() of the (ASCII) account number
+    private int numberHash(int slot) {
+        ByteBuffer m = map;
+        int base = base(slot);
+        int h = 0;
+        for (int i = 0; i < BinaryAccountStore.ACCOUNT_NUMBER_SIZE; i++) {
+            byte b = m.get(base + i);
+            if (b == 0) break;
+            h = 31 * h + (b & 0xFF);
+        }
+        return h;
+    }
+
+    private boolean numberEquals(int slot, String accountNumber) {
+        ByteBuffer m = map;
+        int base = base(slot);
+        int length = accountNumber.length();
+        if (length > BinaryAccountStore.ACCOUNT_NUMBER_SIZE) return false;
+        for (int i = 0; i < length; i++) {
+            if (m.get(base + i) != accountNumber.charAt(i)) return false;
+        }
+        return length == BinaryAccountStore.ACCOUNT_NUMBER_SIZE || m.get(base + length) == 0;
+    }
+
+    public String accountNumber(int slot) {
+        ByteBuffer m = map;
+        byte[] number = new byte[BinaryAccountStore.ACCOUNT_NUMBER_SIZE];
+        m.get(base(slot), number);
+        int length = 0;
+        while (length < number.length && number[length] != 0) length++;
+        return new String(number, 0, length, java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    public int customerId(int slot) {
+        return map.getInt(base(slot) + BinaryAccountStore.CUSTOMER_OFFSET);
+    }
+
+    public AccountType type(int slot) {
+        return AccountType.values()[map.get(base(slot) + BinaryAccountStore.TYPE_OFFSET)];
+    }
+
+    // --- Balance and status, read and written in place ---
+
+    public long getCents(int slot) {
+        return (long) LONGS.getVolatile(map, base(slot) + BinaryAccountStore.BALANCE_OFFSET);
+    }
+
+    public void setCents(int slot, long cents) {
+        long old = (long) LONGS.getAndSet(map, base(slot) + BinaryAccountStore.BALANCE_OFFSET, cents);
+        AccountColumns c = columns;
+        if (c != null) c.addCents(slot, cents - old);
+    }
+
+    // Atomically add to the balance; returns the new balance
+    public long addCents(int slot, long delta) {
+        AccountColumns c = columns;
+        if (c != null) c.addCents(slot, delta);
+        return (long) LONGS.getAndAdd(map, base(slot) + BinaryAccountStore.BALANCE_OFFSET, delta) + delta;
+    }
+
+    public boolean compareAndSetCents(int slot, long expected, long cents) {
+        boolean set = LONGS.compareAndSet(map, base(slot) + BinaryAccountStore.BALANCE_OFFSET, expected, cents);
+        AccountColumns c = columns;
+        if (set && c != null) c.addCents(slot, cents - expected);
+        return set;
+    }
+
+    public int getFlags(int slot) {
+        return map.get(base(slot) + BinaryAccountStore.FLAGS_OFFSET);
+    }
+
+    // Flags share one byte, so changes to them are serialized
+    public synchronized void setFlag(int slot, int flag, boolean on) {
+        int index = base(slot) + BinaryAccountStore.FLAGS_OFFSET;
+        int flags = map.get(index);
+        map.put(index, (byte) (on ? flags | flag : flags & ~flag));
+        if (columns != null && flag == BinaryAccountStore.FROZEN) {
+            columns.setStatus(slot, on ? AccountColumns.FROZEN : AccountColumns.ACTIVE);
+        }
+    }
+
+    // Copy every slot into the columns (row = slot) and keep them current from now on
+    public synchronized void mirrorTo(AccountColumns columns) {
+        for (int slot = 0; slot < count; slot++) {
+            mirror(columns, slot);
+        }
+        this.columns = columns;
+    }
+
+    private void mirror(AccountColumns columns, int slot) {
+        boolean frozen = (getFlags(slot) & BinaryAccountStore.FROZEN) != 0;
+        columns.put(slot, customerId(slot), type(slot), getCents(slot),
+                frozen ? AccountColumns.FROZEN : AccountColumns.ACTIVE);
+    }
+
+    // Write dirty pages of the mapping to disk
+    @Override
+    public synchronized void sync() throws IOException {
+        customerOut.flush();
+        map.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        customerOut.close();
+        if (customerReader != null) customerReader.close();
+        map.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,39 @@
+package bank;
+
+import java.util.*;
+
+// Keeps nothing: for load tests and benchmarks that must not touch disk.
+// Starts from the given customers (or none, in which case DatabaseManager loads sample data).
+public class MemoryAccountStore implements AccountStore {
+
+    private final Map<String, Customer> initial;
+
+    public MemoryAccountStore() {
+        this(new HashMap<>());
+    }
+
+    public MemoryAccountStore(Map<String, Customer> initial) {
+        this.initial = initial;
+    }
+
+    @Override
+    public Map<String, Customer> load() {
+        return initial;
+    }
+
+    @Override
+    public void writeAccount(Account account) {
+    }
+
+    @Override
+    public void writeCustomer(Customer customer) {
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
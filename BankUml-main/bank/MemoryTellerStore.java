@@ -0,0 +1,20 @@
+package bank;
+
+import java.util.*;
+
+// Keeps nothing; TellerDatabaseManager starts with the sample tellers every time
+public class MemoryTellerStore implements TellerStore {
+
+    @Override
+    public Map<String, Teller> load() {
+        return new HashMap<>();
+    }
+
+    @Override
+    public void put(Teller teller, Collection<Teller> all) {
+    }
+
+    @Override
+    public void remove(String employeeId, Collection<Teller> all) {
+    }
+}
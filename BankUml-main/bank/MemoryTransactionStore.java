@@ -0,0 +1,95 @@
+package bank;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Keeps transaction history on the heap only; nothing survives a restart.
+// Page tokens are positions in the account's list, which only ever grows.
+public class MemoryTransactionStore implements TransactionStore {
+
+    private static class Entry {
+        final String accountNumber;
+        final Transaction tx;
+
+        Entry(String accountNumber, Transaction tx) {
+            this.accountNumber = accountNumber;
+            this.tx = tx;
+        }
+    }
+
+    // Guarded by 'this'
+    private final List<Entry> all = new ArrayList<>();
+    private final Map<String, List<Transaction>> byAccount = new HashMap<>();
+
+    @Override
+    public synchronized void save(String accountNumber, Transaction tx) {
+        all.add(new Entry(accountNumber, tx));
+        byAccount.computeIfAbsent(accountNumber, k -> new ArrayList<>()).add(tx);
+    }
+
+    @Override
+    public synchronized List<Transaction> loadForAccount(String accountNumber) {
+        List<Transaction> list = new ArrayList<>();
+        for (Transaction tx : byAccount.getOrDefault(accountNumber, Collections.emptyList())) {
+            list.add(copy(tx));
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized TransactionPage loadPage(String accountNumber, int pageSize, String token) {
+        List<Transaction> history = byAccount.getOrDefault(accountNumber, Collections.emptyList());
+
+        int end = history.size();
+        if (token != null) {
+            try {
+                end = Math.min(end, Integer.parseInt(token));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid continuation token: " + token);
+            }
+        }
+
+        List<Transaction> list = new ArrayList<>();
+        int i = end - 1;
+        for (; i >= 0 && list.size() < pageSize; i--) {
+            list.add(copy(history.get(i)));
+        }
+        return new TransactionPage(list, i >= 0 ? String.valueOf(i + 1) : null);
+    }
+
+    @Override
+    public synchronized List<SavedTransaction> loadBetween(LocalDateTime from, LocalDateTime to) {
+        List<SavedTransaction> list = new ArrayList<>();
+        for (Entry e : all) {
+            if (SegmentedTransactionStore.inRange(e.tx, from, to)) {
+                list.add(new SavedTransaction(e.accountNumber, copy(e.tx)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized List<Transaction> loadBetween(String accountNumber, LocalDateTime from, LocalDateTime to) {
+        List<Transaction> list = new ArrayList<>();
+        for (Transaction tx : byAccount.getOrDefault(accountNumber, Collections.emptyList())) {
+            if (SegmentedTransactionStore.inRange(tx, from, to)) list.add(copy(tx));
+        }
+        return list;
+    }
+
+    // Callers may attach accounts to what they get back, so the stored copy is never handed out
+    private static Transaction copy(Transaction tx) {
+        Transaction c = new Transaction(tx.getTransactionId(), tx.getAmount(), tx.getType(), null, null);
+        c.setStatus(tx.getStatus());
+        c.setTimestamp(tx.getTimestamp());
+        return c;
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,25 @@
+package bank;
+
+// Amounts of money as whole cents. Balances are kept in cents (Account.getBalanceCents), so
+// they add up exactly and are printed without going through double.
+public final class Money {
+
+    private Money() {
+    }
+
+    // Nearest whole cent
+    public static long cents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    // "1234.50", "-0.05"; the same text String.format("%.2f", cents / 100.0) gives
+    public static String format(long cents) {
+        StringBuilder sb = new StringBuilder(24);
+        if (cents < 0) sb.append('-');
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        sb.append(abs / 100).append('.');
+        if (fraction < 10) sb.append('0');
+        return sb.append(fraction).toString();
+    }
+}
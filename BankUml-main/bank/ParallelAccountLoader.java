@@ -0,0 +1,194 @@
+package bank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// Loads a large accounts.csv on several cores.
+// The file is cut into byte ranges that start right after a newline, every range is
+// parsed on a fork-join pool into its own customer map, and the maps are merged in file
+// order. A customer whose rows straddle a range boundary shows up in two chunk maps;
+// the merge moves the later rows' accounts onto the first Customer object so each
+// customer still ends up with one object holding all its accounts, in file order.
+// A repeated account number updates the account first seen, within a chunk and across
+// chunks, as AccountLog.applyAccount does for the single-threaded load.
+public class ParallelAccountLoader {
+
+    // Below this size a single thread is faster than splitting the file
+    public static final long PARALLEL_THRESHOLD = 8L * 1024 * 1024;
+
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private final Path file;
+    private final int parallelism;
+
+    public ParallelAccountLoader(String file) {
+        this(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelAccountLoader(String file, int parallelism) {
+        this.file = Paths.get(file);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public Map<String, Customer> load() throws IOException {
+        List<long[]> ranges = split();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ChunkTask> tasks = new ArrayList<>();
+            for (long[] range : ranges) {
+                tasks.add(new ChunkTask(range[0], range[1]));
+            }
+
+            // Merge in file order so account order inside each customer is preserved
+            Map<String, Customer> customers = new HashMap<>();
+            Map<String, Account> accounts = new HashMap<>();
+            for (ChunkTask task : pool.invoke(new ForkAll(tasks))) {
+                merge(customers, accounts, task.join());
+            }
+            return customers;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Byte ranges [start, end) covering every row after the header, each starting on a row boundary
+    private List<long[]> split() throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = nextRowStart(channel, 0, size);   // skip header
+
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, (size - start) / (parallelism * 4L) + 1);
+
+            while (start < size) {
+                long end = start + chunkSize >= size ? size : nextRowStart(channel, start + chunkSize, size);
+                ranges.add(new long[]{start, end});
+                start = end;
+            }
+        }
+
+        return ranges;
+    }
+
+    // Offset of the first byte after the next '\n' at or after 'from'
+    private static long nextRowStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        long position = from;
+
+        while (position < size) {
+            buf.clear();
+            int n = channel.read(buf, position);
+            if (n <= 0) break;
+
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') return position + i + 1;
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    // accounts: accountNumber -> Account of everything merged so far
+    private static void merge(Map<String, Customer> customers, Map<String, Account> accounts,
+                              Map<String, Customer> chunk) {
+        for (Map.Entry<String, Customer> entry : chunk.entrySet()) {
+            Customer customer = entry.getValue();
+            Customer existing = customers.get(entry.getKey());
+            if (existing == null) customers.put(entry.getKey(), customer);
+
+            for (Account acc : customer.getAccounts()) {
+                Account earlier = accounts.get(acc.getAccountNumber());
+                if (earlier != null) {
+                    // Number already loaded from an earlier chunk: only balance and status change
+                    earlier.setBalanceCents(acc.getBalanceCents());
+                    earlier.setStatus(acc.getStatus());
+                    if (existing == null) customer.getAccounts().remove(acc);
+                    continue;
+                }
+                accounts.put(acc.getAccountNumber(), acc);
+
+                // Customer continued from an earlier chunk: re-home its accounts
+                if (existing != null) {
+                    acc.setCustomer(existing);
+                    existing.addAccount(acc);
+                }
+            }
+        }
+    }
+
+    private class ChunkTask extends RecursiveTask<Map<String, Customer>> {
+        private static final long serialVersionUID = 1L;
+        private final long start;
+        private final long end;
+
+        ChunkTask(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Map<String, Customer> compute() {
+            // LinkedHashMap keeps customers in the order they appear in the chunk
+            Map<String, Customer> customers = new LinkedHashMap<>();
+            Map<String, Account> accounts = new HashMap<>();
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                 CsvTokenizer csv = new CsvTokenizer(Channels.newInputStream(channel.position(start)), end - start)) {
+
+                AccountType[] types = AccountType.values();
+                Customer customer = null;
+
+                while (csv.nextRow()) {
+                    if (csv.fieldCount() < 7) {
+                        System.err.println("Invalid row skipped: " + csv.rowText());
+                        continue;
+                    }
+
+                    int customerId = csv.getInt(0);
+                    if (customer == null || customer.getCustomerId() != customerId) {
+                        customer = customers.get(customerId + "");
+                        if (customer == null) {
+                            customer = new Customer(customerId, csv.getString(1), csv.getString(2));
+                            customers.put(customerId + "", customer);
+                        }
+                    }
+
+                    AccountLog.applyAccount(accounts, customer,
+                            csv.getString(3),
+                            csv.getEnum(4, types),
+                            csv.getDouble(5),
+                            csv.getInterned(6));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return customers;
+        }
+    }
+
+    // Forks every chunk task and waits for all of them
+    private static class ForkAll extends RecursiveTask<List<ChunkTask>> {
+        private static final long serialVersionUID = 1L;
+        private final List<ChunkTask> tasks;
+
+        ForkAll(List<ChunkTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected List<ChunkTask> compute() {
+            ForkJoinTask.invokeAll(tasks);
+            return tasks;
+        }
+    }
+}
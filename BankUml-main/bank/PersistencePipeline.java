@@ -0,0 +1,195 @@
+package bank;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Background stage between in-memory changes and the files on disk.
+// DatabaseManager and TransactionsDatabaseManager apply a change in memory, queue the
+// write here and return; one writer thread runs the queued writes in order. Callers
+// (including the Swing EDT) therefore never wait for a CSV rewrite or an fsync.
+//
+// The queue is bounded: when it is full submit() blocks until the writer catches up.
+// flush() waits until everything queued so far has been written, awaitDurable() also
+// fsyncs it. Queued writes are drained on shutdown.
+public class PersistencePipeline {
+
+    private static PersistencePipeline instance;
+
+    // -Dbank.persist.async=false runs every write on the caller's thread (the old behaviour)
+    private final boolean async = !"false".equalsIgnoreCase(System.getProperty("bank.persist.async"));
+    // -Dbank.persist.queueCapacity=<writes>
+    private final int capacity = Math.max(1, Integer.getInteger("bank.persist.queueCapacity", 10_000));
+
+    private final Thread writer;
+    private final List<Runnable> syncHooks = new CopyOnWriteArrayList<>();
+    private final List<Runnable> shutdownHooks = new CopyOnWriteArrayList<>();
+
+    // Guarded by 'this'
+    private final ArrayDeque<Task> queue = new ArrayDeque<>();
+    private long submitted;
+    private long completed;
+    private long failed;
+    private long blockedSubmits;
+    private int maxDepth;
+    private long runningSince;   // enqueue time of the write in progress, 0 if idle
+    private boolean closed;
+
+    private static class Task {
+        final Runnable work;
+        final long enqueuedAt = System.nanoTime();
+
+        Task(Runnable work) {
+            this.work = work;
+        }
+    }
+
+    private PersistencePipeline() {
+        writer = new Thread(this::writeLoop, "persistence-writer");
+        writer.setDaemon(true);
+        if (async) writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    }
+
+    public static synchronized PersistencePipeline getInstance() {
+        if (instance == null) {
+            instance = new PersistencePipeline();
+        }
+        return instance;
+    }
+
+    // Called by awaitDurable() after the queue is drained, to fsync a file
+    public void addSyncHook(Runnable hook) {
+        syncHooks.add(hook);
+    }
+
+    // Called on shutdown after the queue is drained, to close files
+    public void addShutdownHook(Runnable hook) {
+        shutdownHooks.add(hook);
+    }
+
+    // Queue a write. Blocks while the queue is full.
+    public void submit(Runnable work) {
+        // Writes queued by a queued write run right away, so the writer never waits on itself
+        if (!async || Thread.currentThread() == writer) {
+            runInline(work);
+            return;
+        }
+
+        synchronized (this) {
+            if (queue.size() >= capacity) {
+                blockedSubmits++;
+                while (queue.size() >= capacity && !closed) {
+                    waitQuietly();
+                }
+            }
+            if (!closed) {
+                queue.add(new Task(work));
+                submitted++;
+                maxDepth = Math.max(maxDepth, queue.size());
+                notifyAll();
+                return;
+            }
+        }
+        // Shutting down: nobody is left to drain the queue
+        runInline(work);
+    }
+
+    private void runInline(Runnable work) {
+        synchronized (this) {
+            submitted++;
+        }
+        run(work);
+        synchronized (this) {
+            completed++;
+            notifyAll();
+        }
+    }
+
+    private void run(Runnable work) {
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                failed++;
+            }
+            System.out.println("Error in background write: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    waitQuietly();
+                }
+                if (queue.isEmpty()) return;
+                task = queue.poll();
+                runningSince = task.enqueuedAt;
+                notifyAll(); // room for a blocked submit
+            }
+
+            run(task.work);
+
+            synchronized (this) {
+                completed++;
+                runningSince = 0;
+                notifyAll();
+            }
+        }
+    }
+
+    private void waitQuietly() {
+        try {
+            wait(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Wait until every write queued before this call has been run
+    public void flush() {
+        if (Thread.currentThread() == writer) return;
+        synchronized (this) {
+            long target = submitted;
+            while (completed < target) {
+                waitQuietly();
+            }
+        }
+    }
+
+    // flush(), then fsync everything that was written
+    public void awaitDurable() {
+        flush();
+        for (Runnable hook : syncHooks) {
+            hook.run();
+        }
+    }
+
+    public synchronized PipelineMetrics metrics() {
+        long now = System.nanoTime();
+        long oldest = runningSince != 0 ? runningSince : queue.isEmpty() ? 0 : queue.peek().enqueuedAt;
+        long lagMillis = oldest == 0 ? 0 : (now - oldest) / 1_000_000;
+        return new PipelineMetrics(queue.size(), maxDepth, capacity, submitted, completed, failed,
+                blockedSubmits, lagMillis);
+    }
+
+    // Drain the queue, then let the stores close their files
+    private void shutdown() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (async) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Runnable hook : shutdownHooks) {
+            hook.run();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package bank;
+
+import lombok.Getter;
+
+// Snapshot of PersistencePipeline counters
+@Getter
+public class PipelineMetrics {
+    private final int queueDepth;        // writes waiting right now
+    private final int maxQueueDepth;     // highest depth seen
+    private final int capacity;
+    private final long submitted;
+    private final long completed;
+    private final long failed;
+    private final long blockedSubmits;   // submits that had to wait for room (back-pressure)
+    private final long lagMillis;        // age of the oldest write not yet finished
+
+    public PipelineMetrics(int queueDepth, int maxQueueDepth, int capacity, long submitted, long completed,
+                           long failed, long blockedSubmits, long lagMillis) {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.capacity = capacity;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.failed = failed;
+        this.blockedSubmits = blockedSubmits;
+        this.lagMillis = lagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queue %d/%d (max %d), submitted %d, completed %d, failed %d, blocked %d, lag %d ms",
+                queueDepth, capacity, maxQueueDepth, submitted, completed, failed, blockedSubmits, lagMillis);
+    }
+}
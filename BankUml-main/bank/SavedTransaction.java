@@ -0,0 +1,17 @@
+package bank;
+
+import lombok.Getter;
+
+// A transaction as TransactionStore.loadBetween returns it: without account references, plus
+// the number of the account it was saved under. TransactionsDatabaseManager attaches the
+// account, so stores never call into DatabaseManager.
+@Getter
+public class SavedTransaction {
+    private final String accountNumber;
+    private final Transaction transaction;
+
+    public SavedTransaction(String accountNumber, Transaction transaction) {
+        this.accountNumber = accountNumber;
+        this.transaction = transaction;
+    }
+}
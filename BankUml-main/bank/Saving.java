@@ -17,11 +17,12 @@ public class Saving extends Account {
             return false;
         }
 
-        balance += amount;
+        long cents = Money.cents(amount);
+        addCents(cents);
 
-        System.out.println("Deposited $" + String.format("%.2f", amount) +
+        System.out.println("Deposited $" + Money.format(cents) +
                 " to " + customer.getName() + "'s saving account");
-        System.out.println("New balance: $" + String.format("%.2f", balance));
+        System.out.println("New balance: $" + Money.format(getBalanceCents()));
 
         Transaction tx = new Transaction(
                 generateTransactionId(),
@@ -37,15 +38,22 @@ public class Saving extends Account {
 
     // Withdraw money
     public boolean withdraw(double amount) {
-        if (!validateTransaction(amount)) {
+        if (amount <= 0) {
+            System.out.println("Transaction failed: Amount must be positive");
             return false;
         }
 
-        balance -= amount;
+        // The funds check is part of the debit (one compare-and-set), so two withdrawals
+        // can't both pass it
+        long cents = Money.cents(amount);
+        if (!tryDebit(cents)) {
+            printInsufficientFunds(cents);
+            return false;
+        }
 
-        System.out.println("Withdrawn $" + String.format("%.2f", amount) +
+        System.out.println("Withdrawn $" + Money.format(cents) +
                 " from " + customer.getName() + "'s saving account");
-        System.out.println("New balance: $" + String.format("%.2f", balance));
+        System.out.println("New balance: $" + Money.format(getBalanceCents()));
 
         Transaction tx = new Transaction(
                 generateTransactionId(),
@@ -59,24 +67,30 @@ public class Saving extends Account {
         return true;
     }
 
-    // Validate basic withdrawal rules
+    // Validate basic withdrawal rules. Only a preview: the balance can change before a
+    // withdrawal, which checks the funds again as it debits (see withdraw)
     public boolean validateTransaction(double amount) {
         if (amount <= 0) {
             System.out.println("Transaction failed: Amount must be positive");
             return false;
         }
-        if (amount > balance) {
-            System.out.println("Transaction failed: Insufficient funds");
-            System.out.println("Balance: $" + String.format("%.2f", balance) +
-                    ", Requested: $" + String.format("%.2f", amount));
+        long cents = Money.cents(amount);
+        if (cents > getBalanceCents()) {
+            printInsufficientFunds(cents);
             return false;
         }
         return true;
     }
 
+    private void printInsufficientFunds(long requestedCents) {
+        System.out.println("Transaction failed: Insufficient funds");
+        System.out.println("Balance: $" + Money.format(getBalanceCents()) +
+                ", Requested: $" + Money.format(requestedCents));
+    }
+
     public void printBalance() {
         System.out.println(customer.getName() +
-                "'s Savings Account Balance: $" + String.format("%.2f", balance));
+                "'s Savings Account Balance: $" + Money.format(getBalanceCents()));
     }
 
     private int generateTransactionId() {
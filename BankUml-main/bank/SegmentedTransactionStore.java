@@ -0,0 +1,452 @@
+package bank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Default TransactionStore. transactions.csv is the active segment of a segmented log
+// (so it is already log-structured: rows are only ever appended). Once it reaches
+// bank.tx.segmentBytes (or is older than bank.tx.segmentMaxAgeMs) it is sealed: renamed to
+// transactions-000001.csv, transactions-000002.csv, ... next to its index sidecar and a Bloom
+// filter of the account numbers it holds, and a fresh transactions.csv is started.
+// Account queries skip every sealed segment whose Bloom filter rules the account out.
+public class SegmentedTransactionStore implements TransactionStore {
+
+    private final String CSV_FILE = "transactions.csv";
+    private final String INDEX_FILE = "transactions.idx";
+    private static final String HEADER = "transactionId,accountNumber,type,amount,status,timestamp";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("transactions-(\\d{6})\\.csv");
+
+    // -Dbank.tx.durability=SYNC|INTERVAL|OS and -Dbank.tx.syncIntervalMs=<ms>
+    private final GroupCommitWriter.Durability durability = GroupCommitWriter.Durability.parse(
+            System.getProperty("bank.tx.durability"), GroupCommitWriter.Durability.INTERVAL);
+    private final long syncIntervalMs = Long.getLong("bank.tx.syncIntervalMs", 100);
+
+    // -Dbank.tx.segmentBytes=<bytes> and -Dbank.tx.segmentMaxAgeMs=<ms> (0 = no age limit).
+    // Sealed segments are memory-mapped, so one segment can't pass 2 GB.
+    private final long segmentBytes = Math.min(Long.getLong("bank.tx.segmentBytes", 64L * 1024 * 1024),
+            Integer.MAX_VALUE);
+    private final long segmentMaxAgeMs = Long.getLong("bank.tx.segmentMaxAgeMs", 0);
+
+    // Appends and queries hold the read lock; sealing the active segment takes the write lock
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+
+    // One long-lived handle on transactions.csv shared by every saveTransaction call
+    private GroupCommitWriter writer;
+
+    // Where each account's rows are in transactions.csv
+    private TransactionIndex index;
+
+    // Sealed segments oldest first, then the active one
+    private final List<TransactionSegment> sealed = new ArrayList<>();
+    private TransactionSegment active;
+    private long activeSince;
+
+    // Fails if the segments can't be opened, rather than leaving a store without a writer
+    public SegmentedTransactionStore() throws IOException {
+        try {
+            openSealedSegments();
+            int nextId = sealed.isEmpty() ? 1 : sealed.get(sealed.size() - 1).getId() + 1;
+            openActive(nextId);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void openSealedSegments() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get("."), "transactions-*.csv")) {
+            for (Path path : dir) {
+                Matcher m = SEGMENT_FILE.matcher(path.getFileName().toString());
+                if (m.matches()) ids.add(Integer.parseInt(m.group(1)));
+            }
+        }
+        Collections.sort(ids);
+
+        for (int id : ids) {
+            sealed.add(TransactionSegment.sealed(id, segmentPath(id, "csv"), segmentPath(id, "idx"),
+                    segmentPath(id, "bloom")));
+        }
+    }
+
+    private void openActive(int id) throws IOException {
+        File file = new File(CSV_FILE);
+        if (!file.exists()) {
+            PrintWriter writer = new PrintWriter(new FileWriter(CSV_FILE));
+            writer.println(HEADER);
+            writer.close();
+
+            // A new file has nothing to index yet
+            Files.deleteIfExists(Paths.get(INDEX_FILE));
+            Files.createFile(Paths.get(INDEX_FILE));
+        }
+
+        writer = new GroupCommitWriter(CSV_FILE, durability, syncIntervalMs);
+        index = new TransactionIndex(CSV_FILE, INDEX_FILE);
+        active = TransactionSegment.active(id, CSV_FILE, index);
+        activeSince = System.currentTimeMillis();
+    }
+
+    private static Path segmentPath(int id, String extension) {
+        return Paths.get(String.format("transactions-%06d.%s", id, extension));
+    }
+
+    private static byte[] row(String accountNumber, Transaction tx) {
+        String line = String.format(
+                "%d,%s,%s,%s,%s,%s%n",
+                tx.getTransactionId(),
+                accountNumber,
+                tx.getType(),
+                Money.format(Money.cents(tx.getAmount())),
+                tx.getStatus(),
+                tx.getTimestamp()
+        );
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Whether this waits for the disk depends on the configured durability
+    @Override
+    public void save(String accountNumber, Transaction tx) {
+        byte[] row = row(accountNumber, tx);
+        long timestamp = TransactionTimeIndex.key(tx.getTimestamp());
+
+        try {
+            boolean full;
+
+            segmentLock.readLock().lock();
+            try {
+                long offset = writer.append(row);
+                index.add(accountNumber, offset, row.length, timestamp);
+                full = segmentFull();
+            } finally {
+                segmentLock.readLock().unlock();
+            }
+
+            if (full) roll();
+
+        } catch (IOException e) {
+            System.out.println("Error saving transaction: " + e.getMessage());
+        }
+    }
+
+    // All rows go to the writer as one record, so a batch costs one write (and with SYNC
+    // durability one fsync) instead of one per transaction. A batch is never split across
+    // segments; the segment rolls after it if it is full.
+    @Override
+    public void saveAll(List<String> accountNumbers, List<Transaction> txs) {
+        if (txs.isEmpty()) return;
+
+        byte[][] rows = new byte[txs.size()][];
+        int total = 0;
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = row(accountNumbers.get(i), txs.get(i));
+            total += rows[i].length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(total);
+        for (byte[] row : rows) {
+            record.put(row);
+        }
+
+        try {
+            boolean full;
+
+            segmentLock.readLock().lock();
+            try {
+                long offset = writer.append(record.array());
+                for (int i = 0; i < rows.length; i++) {
+                    index.add(accountNumbers.get(i), offset, rows[i].length,
+                            TransactionTimeIndex.key(txs.get(i).getTimestamp()));
+                    offset += rows[i].length;
+                }
+                full = segmentFull();
+            } finally {
+                segmentLock.readLock().unlock();
+            }
+
+            if (full) roll();
+
+        } catch (IOException e) {
+            System.out.println("Error saving transactions: " + e.getMessage());
+        }
+    }
+
+    private boolean segmentFull() {
+        long size = writer.size();
+        if (size >= segmentBytes) return true;
+        return segmentMaxAgeMs > 0 && size > HEADER.length() + 1
+                && System.currentTimeMillis() - activeSince >= segmentMaxAgeMs;
+    }
+
+    // Seal transactions.csv as the next numbered segment and start a new one.
+    // The data file is renamed last, so a crash part way through leaves either the old
+    // active segment (its index is rebuilt) or a complete sealed segment.
+    private void roll() {
+        segmentLock.writeLock().lock();
+        try {
+            if (!segmentFull()) return; // another thread sealed it first
+
+            int id = active.getId();
+            writer.close();
+            index.close();
+            active.close();
+
+            BloomFilter bloom = TransactionSegment.bloomFor(index);
+            bloom.writeTo(segmentPath(id, "bloom"));
+            Files.move(Paths.get(INDEX_FILE), segmentPath(id, "idx"), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(Paths.get(CSV_FILE), segmentPath(id, "csv"), StandardCopyOption.ATOMIC_MOVE);
+
+            sealed.add(TransactionSegment.justSealed(id, segmentPath(id, "csv"), segmentPath(id, "idx"), index, bloom));
+            openActive(id + 1);
+
+        } catch (IOException e) {
+            System.out.println("Error sealing transaction segment: " + e.getMessage());
+            reopenAfterFailedRoll();
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    // Keep accepting transactions in whatever segment is on disk now
+    private void reopenAfterFailedRoll() {
+        try {
+            int id = active.getId();
+            if (!Files.exists(Paths.get(CSV_FILE)) && Files.exists(segmentPath(id, "csv"))) {
+                sealed.add(TransactionSegment.sealed(id, segmentPath(id, "csv"), segmentPath(id, "idx"),
+                        segmentPath(id, "bloom")));
+                id++;
+            }
+            openActive(id);
+        } catch (IOException e) {
+            System.out.println("Error reopening transactions file: " + e.getMessage());
+        }
+    }
+
+    // Segments oldest first, ending with the active one. Call with the read lock held.
+    private List<TransactionSegment> segments() {
+        List<TransactionSegment> all = new ArrayList<>(sealed);
+        all.add(active);
+        return all;
+    }
+
+    @Override
+    public void sync() {
+        segmentLock.readLock().lock();
+        try {
+            writer.sync();
+        } catch (IOException e) {
+            System.out.println("Error syncing transactions: " + e.getMessage());
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        segmentLock.writeLock().lock();
+        try {
+            if (writer != null) writer.close();
+            if (index != null) index.close();
+            for (TransactionSegment segment : sealed) segment.close();
+            if (active != null) active.close();
+        } catch (IOException e) {
+            System.out.println("Error closing transactions file: " + e.getMessage());
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    // Load all transactions for one account, oldest first.
+    // Sealed segments whose Bloom filter rules the account out are never opened; in the
+    // rest only that account's rows are read, using the offsets in the segment's index.
+    @Override
+    public List<Transaction> loadForAccount(String accountNumber) {
+        List<Transaction> list = new ArrayList<>();
+
+        segmentLock.readLock().lock();
+        try {
+            // Rows still queued in the writer must reach the file before we read it
+            writer.flush();
+
+            for (TransactionSegment segment : segments()) {
+                if (!segment.mightContain(accountNumber)) continue;
+                list.addAll(readTransactions(segment, accountNumber, segment.index().find(accountNumber)));
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+
+        return list;
+    }
+
+    // Newest-first page of at most pageSize transactions.
+    // Pass null for the first page, then the nextToken of the previous page. Tokens are
+    // "segment:offset" positions, so they stay valid while new transactions are appended
+    // and segments are sealed. A bare offset refers to the active segment.
+    @Override
+    public TransactionPage loadPage(String accountNumber, int pageSize, String token) {
+        segmentLock.readLock().lock();
+        try {
+            int startSegment = active.getId();
+            long maxOffset = Long.MAX_VALUE;
+            if (token != null) {
+                try {
+                    int colon = token.indexOf(':');
+                    if (colon >= 0) startSegment = Integer.parseInt(token.substring(0, colon));
+                    maxOffset = Long.parseLong(token.substring(colon + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid continuation token: " + token);
+                }
+            }
+
+            writer.flush();
+
+            List<Transaction> list = new ArrayList<>();
+            String next = null;
+            List<TransactionSegment> segments = segments();
+
+            for (int s = segments.size() - 1; s >= 0 && next == null; s--) {
+                TransactionSegment segment = segments.get(s);
+                if (segment.getId() > startSegment || !segment.mightContain(accountNumber)) continue;
+
+                long max = segment.getId() == startSegment ? maxOffset : Long.MAX_VALUE;
+                int remaining = pageSize - list.size();
+
+                // Ask for one extra row to know whether an older page exists
+                long[] rows = segment.index().findNewest(accountNumber, max, remaining + 1);
+                int count = Math.min(remaining, rows.length / 2);
+
+                list.addAll(readTransactions(segment, accountNumber, Arrays.copyOf(rows, count * 2)));
+                if (rows.length / 2 > count) next = segment.getId() + ":" + rows[count * 2];
+            }
+
+            return new TransactionPage(list, next);
+
+        } catch (IOException e) {
+            System.out.println("Error loading transactions: " + e.getMessage());
+            return new TransactionPage(new ArrayList<>(), null);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    // Every transaction with from <= timestamp <= to, in file order.
+    // Each segment's time index narrows the scan to the blocks that can hold the window.
+    @Override
+    public List<SavedTransaction> loadBetween(LocalDateTime from, LocalDateTime to) {
+        List<SavedTransaction> list = new ArrayList<>();
+
+        segmentLock.readLock().lock();
+        try {
+            writer.flush();
+
+            for (TransactionSegment segment : segments()) {
+                long[] range = segment.index().timeRange(from, to);
+                if (range == null) continue;
+
+                try (FileChannel channel = FileChannel.open(segment.getDataFile(), StandardOpenOption.READ)) {
+                    long end = Math.min(range[1], channel.size());
+                    CsvTokenizer csv = new CsvTokenizer(Channels.newInputStream(channel.position(range[0])), end - range[0]);
+
+                    while (csv.nextRow()) {
+                        if (csv.fieldCount() < 6) continue;
+
+                        Transaction tx = parseTransaction(csv);
+                        if (!inRange(tx, from, to)) continue;
+
+                        list.add(new SavedTransaction(csv.getString(1), tx));
+                    }
+                }
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+
+        return list;
+    }
+
+    // One account's transactions with from <= timestamp <= to, oldest first
+    @Override
+    public List<Transaction> loadBetween(String accountNumber, LocalDateTime from, LocalDateTime to) {
+        List<Transaction> list = new ArrayList<>();
+
+        segmentLock.readLock().lock();
+        try {
+            writer.flush();
+
+            for (TransactionSegment segment : segments()) {
+                if (!segment.mightContain(accountNumber)) continue;
+
+                TransactionIndex segmentIndex = segment.index();
+                long[] range = segmentIndex.timeRange(from, to);
+                if (range == null) continue;
+
+                long[] rows = segmentIndex.findBetween(accountNumber, range[0], range[1]);
+                for (Transaction tx : readTransactions(segment, accountNumber, rows)) {
+                    if (inRange(tx, from, to)) list.add(tx);
+                }
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+
+        return list;
+    }
+
+    static boolean inRange(Transaction tx, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime t = tx.getTimestamp();
+        return t != null && !t.isBefore(from) && !t.isAfter(to);
+    }
+
+    // Parse the given rows of a segment, in the order given
+    private List<Transaction> readTransactions(TransactionSegment segment, String accountNumber, long[] rows)
+            throws IOException {
+        List<Transaction> list = new ArrayList<>();
+        if (rows.length == 0) return list;
+
+        try (CsvTokenizer csv = new CsvTokenizer(new ByteArrayInputStream(segment.readRows(rows)))) {
+            while (csv.nextRow()) {
+                if (csv.fieldCount() < 5 || !csv.fieldEquals(1, accountNumber)) continue;
+                list.add(parseTransaction(csv));
+            }
+        }
+        return list;
+    }
+
+    private Transaction parseTransaction(CsvTokenizer csv) {
+        int txId = csv.getInt(0);
+        String type = csv.getInterned(2);
+        double amount = csv.getDouble(3);
+        String status = csv.getInterned(4);
+
+        Transaction tx = new Transaction(txId, amount, type, null, null);
+        tx.setStatus(status);
+
+        if (csv.fieldCount() > 5) {
+            try {
+                tx.setTimestamp(LocalDateTime.parse(csv.getString(5)));
+            } catch (DateTimeParseException e) {
+                tx.setTimestamp(null);
+            }
+        }
+        return tx;
+    }
+}
@@ -0,0 +1,276 @@
+package bank;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// Splits customers and their accounts over N independent stores (-Dbank.shards, see
+// StorageConfig) by a hash of the customer id. Every shard has its own files and its own
+// lock, so a change to one customer touches one shard, and a batch of dirty accounts is
+// written by all shards at once.
+//
+// Units written with writeTogether() that fall in one shard are one GROUP record there. A
+// unit spanning shards (a transfer between customers of different shards) is committed in
+// two phases, holding the locks of the shards involved, taken in shard order:
+//   1. each shard appends its part as a GROUP record tagged with a new transfer id, and fsyncs
+//   2. the id is appended to the TransferLog and fsynced: the transfer has committed
+// On load a shard skips GROUP records whose id the TransferLog does not have, so a crash
+// before step 2 drops both legs and a crash after it keeps both.
+public class ShardedAccountStore implements AccountStore {
+
+    // Opens shard number 'shard'. committed tells the shard which transfer ids have committed.
+    public interface ShardFactory {
+        AccountStore open(int shard, Predicate<String> committed) throws IOException;
+    }
+
+    private final AccountStore[] shards;
+    private final ReentrantLock[] locks;
+    private final TransferLog transfers;
+    private final ExecutorService writers;
+
+    public ShardedAccountStore(int shardCount, String transferLogFile, ShardFactory factory) throws IOException {
+        this.transfers = new TransferLog(transferLogFile);
+        this.shards = new AccountStore[shardCount];
+        this.locks = new ReentrantLock[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = factory.open(i, transfers::isCommitted);
+            locks[i] = new ReentrantLock();
+        }
+
+        // Not a fixed pool: checkpoint() waits on shard tasks while holding every lock, and
+        // tasks of other writers may be blocked on those locks
+        this.writers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "shard-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // The shard a customer's records live in
+    public int shardOf(int customerId) {
+        int h = customerId * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    private int shardOf(Account account) {
+        return shardOf(account.getCustomer().getCustomerId());
+    }
+
+    // Every shard, loaded in parallel
+    @Override
+    public Map<String, Customer> load() throws IOException {
+        List<Map<String, Customer>> parts = runOnShards(allShards(), shard -> shards[shard].load());
+
+        Map<String, Customer> customers = new HashMap<>();
+        for (Map<String, Customer> part : parts) {
+            customers.putAll(part);
+        }
+        return customers;
+    }
+
+    @Override
+    public void writeAccount(Account account) throws IOException {
+        int shard = shardOf(account);
+        locks[shard].lock();
+        try {
+            shards[shard].writeAccount(account);
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+
+    @Override
+    public void writeCustomer(Customer customer) throws IOException {
+        int shard = shardOf(customer.getCustomerId());
+        locks[shard].lock();
+        try {
+            shards[shard].writeCustomer(customer);
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+
+    // Each shard writes its part of the batch, all shards at the same time
+    @Override
+    public void writeAccounts(Collection<Account> accounts) throws IOException {
+        Map<Integer, List<Account>> parts = partitionAccounts(accounts);
+        runOnShards(parts.keySet(), shard -> {
+            locks[shard].lock();
+            try {
+                shards[shard].writeAccounts(parts.get(shard));
+            } finally {
+                locks[shard].unlock();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void writeTogether(List<Account> accounts, String transferId) throws IOException {
+        Map<Integer, List<Account>> parts = partitionAccounts(accounts);
+        if (parts.isEmpty()) return;
+
+        lockAll(parts.keySet());
+        try {
+            if (parts.size() == 1) {
+                Map.Entry<Integer, List<Account>> only = parts.entrySet().iterator().next();
+                shards[only.getKey()].writeTogether(only.getValue(), null);
+                return;
+            }
+
+            // Phase 1: every part durable in its shard, tagged with the transfer id
+            String id = transfers.newId();
+            for (Map.Entry<Integer, List<Account>> part : parts.entrySet()) {
+                AccountStore shard = shards[part.getKey()];
+                shard.writeTogether(part.getValue(), id);
+                shard.sync();
+            }
+
+            // Phase 2: commit
+            transfers.commit(id);
+        } finally {
+            unlockAll(parts.keySet());
+        }
+    }
+
+    @Override
+    public boolean needsCheckpoint() {
+        for (AccountStore shard : shards) {
+            if (shard.needsCheckpoint()) return true;
+        }
+        return false;
+    }
+
+    // Checkpoints every shard (in parallel) while no transfer is in progress, then starts a
+    // new TransferLog: no current shard log refers to the transfers committed in the old one
+    @Override
+    public void checkpoint(Collection<Customer> customers) throws IOException {
+        Map<Integer, List<Customer>> parts = partitionCustomers(customers);
+        Set<Integer> all = allShards();
+
+        lockAll(all);
+        try {
+            runOnShards(all, shard -> {
+                shards[shard].checkpoint(parts.getOrDefault(shard, Collections.emptyList()));
+                return null;
+            });
+            transfers.rotate();
+        } finally {
+            unlockAll(all);
+        }
+    }
+
+    @Override
+    public void saveImage(Collection<Customer> customers) throws IOException {
+        Map<Integer, List<Customer>> parts = partitionCustomers(customers);
+        runOnShards(allShards(), shard -> {
+            locks[shard].lock();
+            try {
+                shards[shard].saveImage(parts.getOrDefault(shard, Collections.emptyList()));
+            } finally {
+                locks[shard].unlock();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void sync() throws IOException {
+        runOnShards(allShards(), shard -> {
+            shards[shard].sync();
+            return null;
+        });
+        transfers.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (AccountStore shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        transfers.close();
+        writers.shutdown();
+        if (failure != null) throw failure;
+    }
+
+    private Map<Integer, List<Account>> partitionAccounts(Collection<Account> accounts) {
+        Map<Integer, List<Account>> parts = new TreeMap<>();
+        for (Account account : accounts) {
+            parts.computeIfAbsent(shardOf(account), k -> new ArrayList<>()).add(account);
+        }
+        return parts;
+    }
+
+    private Map<Integer, List<Customer>> partitionCustomers(Collection<Customer> customers) {
+        Map<Integer, List<Customer>> parts = new HashMap<>();
+        for (Customer customer : customers) {
+            parts.computeIfAbsent(shardOf(customer.getCustomerId()), k -> new ArrayList<>()).add(customer);
+        }
+        return parts;
+    }
+
+    private Set<Integer> allShards() {
+        Set<Integer> all = new TreeSet<>();
+        for (int i = 0; i < shards.length; i++) {
+            all.add(i);
+        }
+        return all;
+    }
+
+    // Always in ascending shard order, so two multi-shard writers can't deadlock
+    private void lockAll(Set<Integer> shardSet) {
+        for (int shard : new TreeSet<>(shardSet)) {
+            locks[shard].lock();
+        }
+    }
+
+    private void unlockAll(Set<Integer> shardSet) {
+        for (int shard : shardSet) {
+            locks[shard].unlock();
+        }
+    }
+
+    private interface ShardTask<T> {
+        T run(int shard) throws IOException;
+    }
+
+    // Runs the task for each shard, on the pool when there is more than one, and waits for all
+    private <T> List<T> runOnShards(Collection<Integer> shardSet, ShardTask<T> task) throws IOException {
+        List<T> results = new ArrayList<>();
+        if (shardSet.size() == 1) {
+            results.add(task.run(shardSet.iterator().next()));
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>();
+        for (int shard : shardSet) {
+            futures.add(writers.submit(() -> task.run(shard)));
+        }
+
+        IOException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IOException("interrupted");
+            }
+        }
+        if (failure != null) throw failure;
+        return results;
+    }
+}
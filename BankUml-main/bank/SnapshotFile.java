@@ -0,0 +1,325 @@
+package bank;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+// A file that is only ever replaced whole (accounts.csv, tellers.csv), written crash-safely
+// and checked on load.
+//
+// write() streams the new contents to <file>.tmp, fsyncs it and renames it over <file>, so a
+// crash leaves the old file or the new one, never a truncated mix. While writing, a CRC32C is
+// computed for every BLOCK_SIZE bytes and stored in the sidecar <file>.crc. Before the rename
+// the current file and sidecar are kept as <file>.prev and <file>.prev.crc (hard links where
+// the file system allows, so this costs no copy).
+//
+// latestGood() re-checks the blocks and returns the file, or <file>.prev when the file is
+// missing or a block does not match. Checking is one sequential read of the file: a bad block
+// is found as soon as it is read, and recovery never costs more than one pass over each copy.
+public class SnapshotFile {
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int MAGIC = 0x424B4353; // "BKCS"
+
+    private final Path file;
+    private final Path checksums;
+    private final Path previous;
+    private final Path previousChecksums;
+
+    // Produces the file contents. The stream is closed by SnapshotFile.
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public SnapshotFile(String file) {
+        this.file = Paths.get(file);
+        this.checksums = Paths.get(file + ".crc");
+        this.previous = Paths.get(file + ".prev");
+        this.previousChecksums = Paths.get(file + ".prev.crc");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // Replace the file with new contents
+    public synchronized void write(Content content) throws IOException {
+        Path tmp = sibling(file, ".tmp");
+        Path tmpChecksums = sibling(checksums, ".tmp");
+
+        BlockChecksumStream out;
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            out = new BlockChecksumStream(new BufferedOutputStream(fos, BLOCK_SIZE));
+            content.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        writeChecksums(tmpChecksums, out.length(), out.checksums());
+
+        keepPrevious();
+
+        // Sidecar first: a crash in between leaves a mismatched pair, and load falls back to .prev
+        Files.move(tmpChecksums, checksums, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    // The newest copy whose blocks all match their checksums. A file without a sidecar
+    // (written by an older version, or edited by hand) is trusted as it is.
+    public synchronized Path latestGood() {
+        if (!Files.exists(file) && !Files.exists(previous)) return file;
+
+        if (Files.exists(file)) {
+            if (!Files.exists(checksums)) return file;
+            String problem = verify(file, checksums);
+            if (problem == null) return file;
+            System.out.println("⚠ " + problem);
+        } else {
+            System.out.println("⚠ " + file + " is missing");
+        }
+
+        if (Files.exists(previous)) {
+            String problem = Files.exists(previousChecksums) ? verify(previous, previousChecksums) : null;
+            if (problem == null) {
+                System.out.println("Recovering from " + previous);
+                return previous;
+            }
+            System.out.println("⚠ " + problem);
+        }
+
+        // Nothing verifies: reading what is there beats starting empty
+        return Files.exists(file) ? file : previous;
+    }
+
+    // null if the file (not .prev) and its sidecar match, else what is wrong
+    public synchronized String verify() {
+        if (!Files.exists(checksums)) return "no checksum file";
+        return verify(file, checksums);
+    }
+
+    // null if every block matches, else what is wrong
+    static String verify(Path data, Path sidecar) {
+        try {
+            Checksums expected = readChecksums(sidecar);
+            if (Files.size(data) != expected.length) {
+                return data + ": length " + Files.size(data) + ", expected " + expected.length;
+            }
+
+            try (InputStream in = new VerifyingStream(Files.newInputStream(data), data, expected)) {
+                byte[] buf = new byte[expected.blockSize];
+                while (in.read(buf) >= 0) {
+                    // read() checks each block
+                }
+            }
+            return null;
+
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static class Checksums {
+        int blockSize;
+        long length;
+        int[] crcs;
+    }
+
+    private static Checksums readChecksums(Path sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            Checksums c = new Checksums();
+            if (in.readInt() != MAGIC) throw new IOException("bad checksum file " + sidecar);
+            c.blockSize = in.readInt();
+            c.length = in.readLong();
+            int count = in.readInt();
+            if (c.blockSize <= 0 || c.length < 0 || count != (c.length + c.blockSize - 1) / c.blockSize) {
+                throw new IOException("bad checksum file " + sidecar);
+            }
+            c.crcs = new int[count];
+            for (int i = 0; i < count; i++) {
+                c.crcs[i] = in.readInt();
+            }
+            return c;
+        } catch (EOFException e) {
+            throw new IOException("truncated checksum file " + sidecar);
+        }
+    }
+
+    private static void writeChecksums(Path path, long length, int[] crcs) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(path.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeInt(BLOCK_SIZE);
+            out.writeLong(length);
+            out.writeInt(crcs.length);
+            for (int crc : crcs) {
+                out.writeInt(crc);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    // The current pair becomes .prev; the current names stay in place until the renames
+    private void keepPrevious() throws IOException {
+        if (!Files.exists(file)) return;
+
+        Files.deleteIfExists(previous);
+        Files.deleteIfExists(previousChecksums);
+        link(file, previous);
+        if (Files.exists(checksums)) link(checksums, previousChecksums);
+    }
+
+    private static void link(Path existing, Path link) throws IOException {
+        try {
+            Files.createLink(link, existing);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Make the renames themselves durable. Not possible on every platform (e.g. Windows).
+    private void syncDirectory() {
+        Path dir = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+    // Checks a CRC32C per block of whatever is read through it
+    private static class VerifyingStream extends FilterInputStream {
+        private final Path path;
+        private final Checksums expected;
+        private final CRC32C crc = new CRC32C();
+        private int block;
+        private int inBlock;
+        private long position;
+
+        VerifyingStream(InputStream in, Path path, Checksums expected) {
+            super(in);
+            this.path = path;
+            this.expected = expected;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                if (inBlock > 0) endBlock();
+                if (position != expected.length) {
+                    throw new IOException(path + ": length " + position + ", expected " + expected.length);
+                }
+                return -1;
+            }
+
+            position += n;
+            for (int done = 0; done < n; ) {
+                int chunk = Math.min(n - done, expected.blockSize - inBlock);
+                crc.update(b, off + done, chunk);
+                inBlock += chunk;
+                done += chunk;
+                if (inBlock == expected.blockSize) endBlock();
+            }
+            return n;
+        }
+
+        private void endBlock() throws IOException {
+            if (block >= expected.crcs.length || (int) crc.getValue() != expected.crcs[block]) {
+                throw new IOException(path + ": block " + block + " at offset "
+                        + (long) block * expected.blockSize + " failed its checksum");
+            }
+            block++;
+            inBlock = 0;
+            crc.reset();
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes still have to be checked
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+                if (r < 0) break;
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    // Computes a CRC32C per BLOCK_SIZE bytes of whatever passes through.
+    // close() only flushes: the caller still has to fsync the file underneath.
+    private static class BlockChecksumStream extends FilterOutputStream {
+        private final CRC32C crc = new CRC32C();
+        private int[] checksums = new int[16];
+        private int blocks;
+        private int inBlock;
+        private long length;
+
+        BlockChecksumStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            length++;
+            if (++inBlock == BLOCK_SIZE) endBlock();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            length += len;
+            while (len > 0) {
+                int n = Math.min(len, BLOCK_SIZE - inBlock);
+                crc.update(b, off, n);
+                inBlock += n;
+                off += n;
+                len -= n;
+                if (inBlock == BLOCK_SIZE) endBlock();
+            }
+        }
+
+        private void endBlock() {
+            if (blocks == checksums.length) checksums = Arrays.copyOf(checksums, blocks * 2);
+            checksums[blocks++] = (int) crc.getValue();
+            crc.reset();
+            inBlock = 0;
+        }
+
+        long length() {
+            return length;
+        }
+
+        int[] checksums() {
+            if (inBlock > 0) endBlock();
+            return Arrays.copyOf(checksums, blocks);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
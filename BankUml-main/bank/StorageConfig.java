@@ -0,0 +1,227 @@
+package bank;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Picks the storage backends at startup from -Dbank.storage:
+//   csv    accounts.csv + accounts.log, tellers.csv (default)
+//   binary accounts.dat + customers.dat (BinaryAccountStore), tellers.csv
+//   mapped accounts.dat + customers.dat memory-mapped (MappedAccountTable), tellers.csv
+//   log    accounts.journal and tellers.journal, append-only with compaction
+//   memory nothing on disk; sample data on every start
+// Transactions use the segmented transactions.csv log in every backend except memory.
+// The older -Dbank.accounts.format=csv|binary|mapped is still honoured when bank.storage is unset.
+//
+// -Dbank.shards=N splits the csv and log backends' account files into N shards (see
+// ShardedAccountStore), kept in the directory shards-N. accounts.shards records the shard
+// count in use; when -Dbank.shards differs, the accounts are moved to the new layout at startup.
+public class StorageConfig {
+
+    public enum Backend { CSV, BINARY, MAPPED, LOG, MEMORY }
+
+    public static final String ACCOUNTS_DAT = "accounts.dat";
+    public static final String CUSTOMERS_DAT = "customers.dat";
+    public static final String SHARD_COUNT_FILE = "accounts.shards";
+
+    private static final int MAX_SHARDS = 256;
+
+    private StorageConfig() {
+    }
+
+    public static Backend backend() {
+        String name = System.getProperty("bank.storage", System.getProperty("bank.accounts.format", "csv"));
+        try {
+            return Backend.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown storage backend '" + name + "', using csv");
+            return Backend.CSV;
+        }
+    }
+
+    public static AccountStore accountStore() {
+        Backend backend = backend();
+        int shards = shardCount();
+        try {
+            switch (backend) {
+                case BINARY:
+                    importCsvIfNeeded();
+                    return new BinaryAccountStore(ACCOUNTS_DAT, CUSTOMERS_DAT);
+                case MAPPED:
+                    importCsvIfNeeded();
+                    return new MappedAccountTable(ACCOUNTS_DAT, CUSTOMERS_DAT);
+                case MEMORY:
+                    return new MemoryAccountStore();
+                default:
+                    return fileStore(backend, shards);
+            }
+        } catch (IOException e) {
+            System.out.println("Error opening " + backend + " account store, using csv: " + e.getMessage());
+            return new CsvAccountStore();
+        }
+    }
+
+    // -Dbank.cache.customers=N: load customers lazily, keeping at most N in memory (mapped only)
+    public static int customerCacheSize() {
+        int size = Integer.getInteger("bank.cache.customers", 0);
+        if (size > 0 && backend() != Backend.MAPPED) {
+            System.out.println("Lazy customer loading needs the mapped backend, loading everything");
+            return 0;
+        }
+        return Math.max(0, size);
+    }
+
+    public static int shardCount() {
+        int shards = Integer.getInteger("bank.shards", 1);
+        if (shards < 1 || shards > MAX_SHARDS) {
+            System.out.println("bank.shards must be between 1 and " + MAX_SHARDS + ", using 1");
+            return 1;
+        }
+        Backend backend = backend();
+        if (shards > 1 && backend != Backend.CSV && backend != Backend.LOG) {
+            System.out.println("Sharding needs the csv or log backend, using one " + backend + " store");
+            return 1;
+        }
+        return shards;
+    }
+
+    // csv and log: one set of account files, or -Dbank.shards of them
+    private static AccountStore fileStore(Backend backend, int shards) throws IOException {
+        int current = currentShardCount();
+        if (shards != current) {
+            reshard(backend, current, shards);
+        }
+        return openFileStore(backend, shards);
+    }
+
+    private static AccountStore openFileStore(Backend backend, int shards) throws IOException {
+        if (shards == 1) {
+            return backend == Backend.LOG ? new LogAccountStore() : new CsvAccountStore();
+        }
+
+        String dir = shardDirectory(shards);
+        Files.createDirectories(Paths.get(dir));
+        return new ShardedAccountStore(shards, dir + "/transfers.log", (shard, committed) -> {
+            String base = dir + "/accounts-" + shard;
+            return backend == Backend.LOG
+                    ? new LogAccountStore(base + ".journal", committed)
+                    : new CsvAccountStore(base + ".csv", base + ".log", base + ".img", committed);
+        });
+    }
+
+    private static String shardDirectory(int shards) {
+        return "shards-" + shards;
+    }
+
+    // Shard count the account files are currently laid out for
+    private static int currentShardCount() {
+        try {
+            return Integer.parseInt(Files.readString(Paths.get(SHARD_COUNT_FILE)).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    // Load every account from the old layout and checkpoint it into the new one. Switching
+    // accounts.shards is the commit point: a crash before it leaves the old layout in use.
+    private static void reshard(Backend backend, int from, int to) throws IOException {
+        System.out.println("Moving accounts from " + from + " shard(s) to " + to + "...");
+
+        Map<String, Customer> customers = Map.of();
+        if (from > 1 || hasUnshardedFiles(backend)) {
+            AccountStore source = openFileStore(backend, from);
+            customers = source.load();
+            source.close();
+        }
+
+        // Leftovers of an earlier layout with this shard count would be replayed over the new one
+        clearLayout(backend, to);
+        AccountStore target = openFileStore(backend, to);
+        if (!customers.isEmpty()) {
+            target.checkpoint(customers.values());
+        }
+        target.close();
+
+        if (to == 1) {
+            Files.deleteIfExists(Paths.get(SHARD_COUNT_FILE));
+        } else {
+            Path tmp = Paths.get(SHARD_COUNT_FILE + ".tmp");
+            Files.writeString(tmp, to + System.lineSeparator());
+            Files.move(tmp, Paths.get(SHARD_COUNT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        if (from > 1) deleteTree(Paths.get(shardDirectory(from)));
+    }
+
+    private static boolean hasUnshardedFiles(Backend backend) {
+        if (backend == Backend.LOG) return new File(LogAccountStore.JOURNAL_FILE).exists();
+        return new File(CsvAccountStore.CSV_FILE).exists() || new File(CsvAccountStore.CSV_FILE + ".prev").exists()
+                || new File(CsvAccountStore.LOG_FILE).exists();
+    }
+
+    private static void clearLayout(Backend backend, int shards) throws IOException {
+        if (shards > 1) {
+            deleteTree(Paths.get(shardDirectory(shards)));
+            return;
+        }
+
+        List<String> families = backend == Backend.LOG
+                ? List.of(LogAccountStore.JOURNAL_FILE)
+                : List.of(CsvAccountStore.CSV_FILE, CsvAccountStore.LOG_FILE, CsvAccountStore.IMAGE_FILE);
+        try (Stream<Path> files = Files.list(Paths.get("."))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                for (String family : families) {
+                    if (name.equals(family) || name.startsWith(family + ".")) Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public static TransactionStore transactionStore() {
+        if (backend() == Backend.MEMORY) return new MemoryTransactionStore();
+        try {
+            return new SegmentedTransactionStore();
+        } catch (IOException e) {
+            System.out.println("Error opening transaction files, keeping this session's transactions in memory only: "
+                    + e.getMessage());
+            return new MemoryTransactionStore();
+        }
+    }
+
+    public static TellerStore tellerStore() {
+        switch (backend()) {
+            case LOG:
+                return new LogTellerStore();
+            case MEMORY:
+                return new MemoryTellerStore();
+            default:
+                return new CsvTellerStore();
+        }
+    }
+
+    // The first start with accounts.dat imports accounts.csv (plus pending accounts.log changes)
+    private static void importCsvIfNeeded() throws IOException {
+        if (Files.exists(Paths.get(ACCOUNTS_DAT)) || !new File(CsvAccountStore.CSV_FILE).exists()) return;
+
+        System.out.println("Converting " + CsvAccountStore.CSV_FILE + " to " + ACCOUNTS_DAT + "...");
+        CsvAccountStore csv = new CsvAccountStore();
+        Map<String, Customer> customers = csv.load();
+        csv.close();
+        BinaryAccountStore.write(customers.values(), Paths.get(ACCOUNTS_DAT), Paths.get(CUSTOMERS_DAT));
+    }
+}
@@ -62,14 +62,11 @@ public class Teller {
     }
 
     private List<Account> searchByName(String name) {
-        List<Account> results = new ArrayList<>();
+        return databaseManager.getAccountsByCustomerName(name);
+    }
 
-        for (Account acc : databaseManager.retrieveAllAccounts()) {
-            if (acc.getCustomer().getName().equalsIgnoreCase(name)) {
-                results.add(acc);
-            }
-        }
-        return results;
+    private List<Account> searchByNamePrefix(String prefix) {
+        return databaseManager.getAccountsByCustomerNamePrefix(prefix);
     }
 
     public List<Account> searchAccounts(String query) {
@@ -81,7 +78,10 @@ public class Teller {
 
         // Search by customer name
         List<Account> byName = searchByName(query);
-        return byName;
+        if (!byName.isEmpty()) return byName;
+
+        // Fall back to names starting with the query
+        return searchByNamePrefix(query);
     }
 
     // =============== TRANSACTIONS =================
@@ -132,8 +132,7 @@ public class Teller {
         if (!tx.validate(loginManager)) return null;
 
         tx.apply();
-        databaseManager.updateAccount(source);
-        databaseManager.updateAccount(dest);
+        databaseManager.updateAccounts(source, dest);
 
         return tx;
     }
@@ -145,6 +144,12 @@ public class Teller {
         return assistTransfer(src, dst, amount);
     }
 
+    // Bulk postings (payroll, end of day) in one go; see TransactionEngine.applyBatch
+    public BatchResult assistBatch(List<Transaction> batch) {
+        requireAuth();
+        return TransactionEngine.getInstance().applyBatch(batch);
+    }
+
     // ================= ACCOUNT CONTROL =================
 
     public boolean unfreezeAccount(String accountId) {
@@ -0,0 +1,17 @@
+package bank;
+
+import java.util.Collection;
+import java.util.Map;
+
+// Where TellerDatabaseManager persists tellers. Picked with -Dbank.storage (see StorageConfig).
+public interface TellerStore {
+
+    // Tellers by employee id, as last persisted
+    Map<String, Teller> load();
+
+    // Record a new or changed teller; 'all' is every teller after the change
+    void put(Teller teller, Collection<Teller> all);
+
+    // Record a removed teller; 'all' is every teller after the change
+    void remove(String employeeId, Collection<Teller> all);
+}
@@ -0,0 +1,244 @@
+package bank;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Size-bounded cache with W-TinyLFU eviction, used by DatabaseManager for lazily loaded
+// customers (-Dbank.cache.customers).
+//
+// New entries go into a small LRU window (1% of the capacity). What falls out of the window
+// only enters the main area if it has been asked for more often than the entry the main area
+// would evict for it, so a one-off scan over many customers does not push out the ones that
+// are used all day. Frequencies come from a count-min sketch of 4-bit counters that are
+// halved every 10 x capacity accesses, so old popularity fades. The main area is a
+// segmented LRU: entries start in probation and move to the protected segment (80%) when hit.
+//
+// Loads and the eviction callback run outside the cache's lock.
+public class TinyLfuCache<K, V> {
+
+    private final int capacity;
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+    private final BiConsumer<K, V> onEvict;
+
+    // Guarded by 'this'. Access-ordered: the first entry is the least recently used.
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private long hits;
+    private long misses;
+    private long loads;
+    private long evictions;
+    private long loadNanos;
+
+    public TinyLfuCache(int capacity, BiConsumer<K, V> onEvict) {
+        this.capacity = Math.max(1, capacity);
+        this.windowCapacity = Math.max(1, this.capacity / 100);
+        this.mainCapacity = this.capacity - windowCapacity;
+        this.protectedCapacity = mainCapacity * 8 / 10;
+        this.onEvict = onEvict;
+        this.sketch = new FrequencySketch(this.capacity);
+    }
+
+    // The cached value, or the loader's (which is then cached). A null from the loader is
+    // returned but not cached.
+    public V get(K key, Function<K, V> loader) {
+        synchronized (this) {
+            V value = access(key);
+            if (value != null) {
+                hits++;
+                return value;
+            }
+            misses++;
+        }
+
+        long start = System.nanoTime();
+        V loaded = loader.apply(key);
+        long elapsed = System.nanoTime() - start;
+
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        synchronized (this) {
+            loadNanos += elapsed;
+            if (loaded == null) return null;
+            loads++;
+
+            // Another thread loaded it meanwhile: keep one copy
+            V current = peek(key);
+            if (current != null) return current;
+
+            insert(key, loaded, evicted);
+        }
+        notifyEvicted(evicted);
+        return loaded;
+    }
+
+    // The cached value, or null. Counts as a use.
+    public synchronized V getIfPresent(K key) {
+        return access(key);
+    }
+
+    public void put(K key, V value) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        synchronized (this) {
+            sketch.increment(key);
+            if (window.containsKey(key)) {
+                window.put(key, value);
+            } else if (probation.containsKey(key)) {
+                probation.put(key, value);
+            } else if (protectedSegment.containsKey(key)) {
+                protectedSegment.put(key, value);
+            } else {
+                insert(key, value, evicted);
+            }
+        }
+        notifyEvicted(evicted);
+    }
+
+    public synchronized V remove(K key) {
+        V value = window.remove(key);
+        if (value == null) value = probation.remove(key);
+        if (value == null) value = protectedSegment.remove(key);
+        return value;
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    public synchronized CacheMetrics metrics() {
+        return new CacheMetrics(size(), capacity, hits, misses, loads, evictions, loadNanos);
+    }
+
+    // Look up and record the use: the sketch counts it, and a probation hit is promoted
+    private V access(K key) {
+        sketch.increment(key);
+
+        V value = window.get(key);
+        if (value != null) return value;
+
+        value = protectedSegment.get(key);
+        if (value != null) return value;
+
+        value = probation.remove(key);
+        if (value != null) {
+            protectedSegment.put(key, value);
+            if (protectedSegment.size() > protectedCapacity) {
+                Map.Entry<K, V> demoted = removeEldest(protectedSegment);
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        }
+        return value;
+    }
+
+    // Without counting a use
+    private V peek(K key) {
+        V value = window.get(key);
+        if (value == null) value = probation.get(key);
+        if (value == null) value = protectedSegment.get(key);
+        return value;
+    }
+
+    private void insert(K key, V value, List<Map.Entry<K, V>> evicted) {
+        window.put(key, value);
+        if (window.size() <= windowCapacity) return;
+
+        Map.Entry<K, V> candidate = removeEldest(window);
+        if (probation.size() + protectedSegment.size() < mainCapacity) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        // Main is full: the window's candidate only gets in if it is used more than main's victim
+        LinkedHashMap<K, V> victims = !probation.isEmpty() ? probation : protectedSegment;
+        if (victims.isEmpty()) {
+            evicted.add(candidate);
+        } else {
+            K victim = victims.keySet().iterator().next();
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+                evicted.add(new AbstractMap.SimpleEntry<>(victim, victims.remove(victim)));
+                probation.put(candidate.getKey(), candidate.getValue());
+            } else {
+                evicted.add(candidate);
+            }
+        }
+        evictions++;
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        Map.Entry<K, V> eldest = new AbstractMap.SimpleEntry<>(it.next());
+        it.remove();
+        return eldest;
+    }
+
+    private void notifyEvicted(List<Map.Entry<K, V>> evicted) {
+        if (onEvict == null) return;
+        for (Map.Entry<K, V> e : evicted) {
+            onEvict.accept(e.getKey(), e.getValue());
+        }
+    }
+
+    // Count-min sketch: four rows of 4-bit counters, the estimate is the smallest of a key's
+    // four counters
+    private static class FrequencySketch {
+        private static final int[] SEEDS = {0x97CB3127, 0xB7FB2A37, 0x7C1A4D4F, 0x2C7B1E0D};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows = new byte[SEEDS.length][];
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.min(Math.max(16, capacity), 1 << 26));
+            if (width < capacity && width < 1 << 26) width <<= 1;
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new byte[width];
+            }
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash + SEEDS[row]) * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(Object key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        void increment(Object key) {
+            int hash = spread(key);
+            for (int i = 0; i < rows.length; i++) {
+                int index = index(hash, i);
+                if (rows[i][index] < MAX_COUNT) rows[i][index]++;
+            }
+            if (++additions >= sampleSize) reset();
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key);
+            int min = MAX_COUNT;
+            for (int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        // Halve every counter, so recent use outweighs old use
+        private void reset() {
+            for (byte[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package bank;
 import lombok.Getter;
 import lombok.Setter;
 import java.time.LocalDateTime;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Getter
 @Setter
@@ -32,6 +33,10 @@ public class Transaction {
         this.targetAccount = targetAccount;
     }
 
+    public boolean validate() {
+        return validate(null);
+    }
+
     public boolean validate(LoginManager loginManager) {
 
 
@@ -41,9 +46,9 @@ public class Transaction {
             return false;
         }
 
-        // Validate funds for withdraw / transfer
+        // Validate funds for withdraw / transfer. Advisory: apply() checks again as it debits
         if ((type.equalsIgnoreCase("withdraw") || type.equalsIgnoreCase("transfer"))
-                && sourceAccount != null && sourceAccount.getBalance() < amount) {
+                && sourceAccount != null && sourceAccount.getBalanceCents() < Money.cents(amount)) {
             status = "insufficient funds";
             return false;
         }
@@ -52,17 +57,43 @@ public class Transaction {
         return true;
     }
 
+    // validate() without the funds preview, for a batch validated before any of it is applied:
+    // an entry may be paid for by the ones before it. The funds are checked as it is applied.
+    boolean validateAmount() {
+        if (amount <= 0) {
+            status = "invalid amount";
+            return false;
+        }
+        status = "validated";
+        return true;
+    }
+
+    // Applies a validated transaction. Deposits and withdrawals take no lock: the balance
+    // changes by compare-and-set (Account.addCents / tryDebit). validate() only looked at the
+    // balance, so a debit can still find the money gone by now; tryDebit checks and takes it in
+    // one step and refuses then. A transfer's two legs run under both accounts' AccountLocks
+    // stripes, so code holding those stripes never sees the money gone from the source but not
+    // yet on the target.
     public boolean apply() {
+        if (!applyBalances()) return false;
+
+        if (touchesAccounts()) TransactionsDatabaseManager.getInstance().saveTransaction(this);
+        return true;
+    }
+
+    // apply() without recording the transaction; for callers that save many at once
+    // (TransactionEngine.applyBatch)
+    boolean applyBalances() {
         if (!status.equals("validated"))
             return false;
 
+        long cents = Money.cents(amount);
         switch (type.toLowerCase()) {
             case "deposit":
                 if (targetAccount != null) {
                     if (!targetAccount.getStatus().equals("FROZEN")) {
-                        targetAccount.updateBalance(amount);
+                        targetAccount.addCents(cents);
                         targetAccount.addTransaction(this);
-                        TransactionsDatabaseManager.getInstance().saveTransaction(this);
                     }
                     else {
                         status = "failed due to FROZEN account or other issue";
@@ -72,33 +103,35 @@ public class Transaction {
                 break;
             case "withdraw":
                 if (sourceAccount != null) {
-                    if (!sourceAccount.getStatus().equals("FROZEN")) {
-                        sourceAccount.updateBalance(-amount);
-                        sourceAccount.addTransaction(this);
-                        TransactionsDatabaseManager.getInstance().saveTransaction(this);
-                        }
-                    else {
+                    if (sourceAccount.getStatus().equals("FROZEN")) {
                         status = "failed due to FROZEN account or other issue";
                         return false;
                     }
-
+                    if (!sourceAccount.tryDebit(cents)) {
+                        status = "insufficient funds";
+                        return false;
+                    }
+                    sourceAccount.addTransaction(this);
                 }
                 break;
             case "transfer":
                 if (sourceAccount != null && targetAccount != null) {
-                    if (!sourceAccount.getStatus().equals("FROZEN") && (!targetAccount.getStatus().equals("FROZEN"))) {
-                        sourceAccount.updateBalance(-amount);
-                        targetAccount.updateBalance(amount);
-                        TransactionsDatabaseManager.getInstance().saveTransaction(this);
-                        targetAccount.addTransaction(this);
-                        sourceAccount.addTransaction(this);
-                    }
-
-                    else {
+                    if (sourceAccount.getStatus().equals("FROZEN") || targetAccount.getStatus().equals("FROZEN")) {
                         status = "failed due to FROZEN account or other issue";
                         return false;
                     }
-
+                    ReentrantLock[] locks = AccountLocks.getInstance().lockAll(sourceAccount, targetAccount);
+                    try {
+                        if (!sourceAccount.tryDebit(cents)) {
+                            status = "insufficient funds";
+                            return false;
+                        }
+                        targetAccount.addCents(cents);
+                    } finally {
+                        AccountLocks.unlock(locks);
+                    }
+                    targetAccount.addTransaction(this);
+                    sourceAccount.addTransaction(this);
                 }
                 break;
             default:
@@ -110,6 +143,21 @@ public class Transaction {
         return true;
     }
 
+    // Whether applying changed an account (a deposit or withdrawal needs its account, a
+    // transfer both)
+    boolean touchesAccounts() {
+        switch (type.toLowerCase()) {
+            case "deposit":
+                return targetAccount != null;
+            case "withdraw":
+                return sourceAccount != null;
+            case "transfer":
+                return sourceAccount != null && targetAccount != null;
+            default:
+                return false;
+        }
+    }
+
     public void pay() {
         System.out.println("Payment transaction is done.");
     }
@@ -118,7 +166,7 @@ public class Transaction {
         System.out.println("━━━━━━━━━━━━━ TRANSACTION RECEIPT ━━━━━━━━━━━━━");
         System.out.println("Transaction ID: " + transactionId);
         System.out.println("Type: " + type);
-        System.out.println("Amount: $" + String.format("%.2f", amount));
+        System.out.println("Amount: $" + Money.format(Money.cents(amount)));
         System.out.println("Status: " + status);
         System.out.println("Timestamp: " + timestamp);
         if (sourceAccount != null) {
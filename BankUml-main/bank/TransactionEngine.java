@@ -0,0 +1,213 @@
+package bank;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Runs transactions off the caller's thread. submit() returns at once with a future that
+// completes with the transaction's final status ("completed", "insufficient funds", ...);
+// the transaction is validated, applied and its accounts queued for writing on a worker.
+//
+// Workers are virtual threads when the JVM has them (JDK 21+, found by reflection since the
+// code is built for an older release), otherwise a pool of -Dbank.engine.threads platform
+// threads (default: one per core).
+//
+// Transactions on the same account run one at a time in submission order: each account
+// remembers the future of its last submitted transaction, and a new one starts only after
+// those of all its accounts are done. A transfer's two accounts are registered together
+// under their AccountLocks stripes, so two transfers can't end up waiting for each other.
+// Transactions on different accounts run in parallel.
+public class TransactionEngine {
+
+    private static TransactionEngine instance;
+
+    private final DatabaseManager databaseManager;   // null: nothing is persisted
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    // accountNumber -> the last transaction submitted for it; removed once that is done
+    private final ConcurrentHashMap<String, CompletableFuture<String>> tails = new ConcurrentHashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    TransactionEngine(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newPlatformThreadPool();
+    }
+
+    public static synchronized TransactionEngine getInstance() {
+        if (instance == null) {
+            instance = new TransactionEngine(DatabaseManager.getInstance());
+        }
+        return instance;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor(), or null before JDK 21
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadPool() {
+        int threads = Integer.getInteger("bank.engine.threads", Runtime.getRuntime().availableProcessors());
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "transaction-engine-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public CompletableFuture<String> submit(Transaction tx) {
+        submitted.increment();
+        CompletableFuture<String> done = new CompletableFuture<>();
+        Account source = tx.getSourceAccount();
+        Account target = tx.getTargetAccount();
+
+        // Become the last transaction of both accounts in one step
+        CompletableFuture<String> afterSource = null;
+        CompletableFuture<String> afterTarget = null;
+        ReentrantLock[] locks = AccountLocks.getInstance().lockAll(source, target);
+        try {
+            if (source != null) afterSource = tails.put(source.getAccountNumber(), done);
+            if (target != null && target != source) afterTarget = tails.put(target.getAccountNumber(), done);
+        } finally {
+            AccountLocks.unlock(locks);
+        }
+
+        if (afterSource == null && afterTarget == null) {
+            executor.execute(() -> run(tx, done));
+        } else {
+            CompletableFuture<?> before = afterSource == null ? afterTarget
+                    : afterTarget == null ? afterSource
+                    : CompletableFuture.allOf(afterSource, afterTarget);
+            // A failed predecessor doesn't hold up the ones after it
+            before.whenCompleteAsync((result, error) -> run(tx, done), executor);
+        }
+        return done;
+    }
+
+    private void run(Transaction tx, CompletableFuture<String> done) {
+        try {
+            if (tx.validate() && tx.apply()) {
+                if (databaseManager != null) {
+                    databaseManager.updateAccounts(tx.getSourceAccount(), tx.getTargetAccount());
+                }
+                completed.increment();
+            } else {
+                refused.increment();
+            }
+            release(tx, done);
+            done.complete(tx.getStatus());
+        } catch (RuntimeException e) {
+            failed.increment();
+            release(tx, done);
+            done.completeExceptionally(e);
+        }
+    }
+
+    // Forget this transaction as an account's last one, unless a newer one has taken its place
+    private void release(Transaction tx, CompletableFuture<String> done) {
+        if (tx.getSourceAccount() != null) tails.remove(tx.getSourceAccount().getAccountNumber(), done);
+        if (tx.getTargetAccount() != null) tails.remove(tx.getTargetAccount().getAccountNumber(), done);
+    }
+
+    // Applies a whole batch (payroll, end-of-day postings) on the caller's thread and reports
+    // each item. Every entry is validated first (funds are checked as each is applied, so an
+    // entry can spend what earlier entries brought in); the valid ones are then applied in order while
+    // the batch holds the AccountLocks stripes of all its accounts, and what they changed is
+    // persisted with one transaction store write and one account write (DatabaseManager
+    // .updateAccounts, written as one group). An entry that fails doesn't stop the others.
+    // Not ordered with transactions submitted to the engine at the same time.
+    public BatchResult applyBatch(List<Transaction> batch) {
+        submitted.add(batch.size());
+        boolean[] valid = new boolean[batch.size()];
+        Set<Account> accounts = new LinkedHashSet<>();
+        for (int i = 0; i < valid.length; i++) {
+            Transaction tx = batch.get(i);
+            valid[i] = tx.validateAmount();
+            if (valid[i]) {
+                if (tx.getSourceAccount() != null) accounts.add(tx.getSourceAccount());
+                if (tx.getTargetAccount() != null) accounts.add(tx.getTargetAccount());
+            }
+        }
+
+        List<Transaction> applied = new ArrayList<>();
+        Set<Account> changed = new LinkedHashSet<>();
+        ReentrantLock[] locks = AccountLocks.getInstance().lockAll(accounts.toArray(new Account[0]));
+        try {
+            for (int i = 0; i < valid.length; i++) {
+                Transaction tx = batch.get(i);
+                if (!valid[i] || !tx.applyBalances()) {
+                    refused.increment();
+                    continue;
+                }
+                completed.increment();
+                if (!tx.touchesAccounts()) continue;
+
+                applied.add(tx);
+                if (tx.getSourceAccount() != null) changed.add(tx.getSourceAccount());
+                if (tx.getTargetAccount() != null) changed.add(tx.getTargetAccount());
+            }
+        } finally {
+            AccountLocks.unlock(locks);
+        }
+
+        TransactionsDatabaseManager.getInstance().saveTransactions(applied);
+        if (databaseManager != null && !changed.isEmpty()) {
+            databaseManager.updateAccounts(changed.toArray(new Account[0]));
+        }
+        return new BatchResult(batch);
+    }
+
+    // Transactions submitted but not finished yet
+    public long pending() {
+        return submitted.sum() - completed.sum() - refused.sum() - failed.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getRefused() {
+        return refused.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    // Wait for what was submitted, then stop the workers
+    public void shutdown() {
+        while (pending() > 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
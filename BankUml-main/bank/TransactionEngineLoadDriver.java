@@ -0,0 +1,104 @@
+package bank;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Pushes random deposits, withdrawals and transfers through TransactionEngine from several
+// submitting threads and reports the sustained rate. Runs on in-memory storage unless
+// -Dbank.storage says otherwise. At the end it checks that the money adds up: the bank total
+// must equal the starting total plus completed deposits minus completed withdrawals.
+//
+// Run:
+//   java -cp ".:libs/*" bank.TransactionEngineLoadDriver [transactions] [accounts] [submitters]
+public class TransactionEngineLoadDriver {
+
+    private static final long START_CENTS = 10_000_00;
+    private static final int MAX_IN_FLIGHT = 50_000;
+
+    public static void main(String[] args) throws Exception {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int submitters = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        if (System.getProperty("bank.storage") == null) System.setProperty("bank.storage", "memory");
+        DatabaseManager db = DatabaseManager.getInstance();
+        TransactionEngine engine = TransactionEngine.getInstance();
+
+        Account[] accounts = createAccounts(db, accountCount);
+        long startTotal = 0;
+        for (Account acc : accounts) {
+            startTotal += acc.getBalanceCents();
+        }
+
+        AtomicLong netCents = new AtomicLong();   // completed deposits - completed withdrawals
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        ExecutorService pool = Executors.newFixedThreadPool(submitters);
+        List<Future<?>> results = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int s = 0; s < submitters; s++) {
+            int count = total / submitters + (s < total % submitters ? 1 : 0);
+            results.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < count; i++) {
+                    Account from = accounts[random.nextInt(accountCount)];
+                    Account to = accounts[random.nextInt(accountCount)];
+                    long cents = 1 + random.nextInt(20_000);
+                    String type = random.nextInt(4) == 0 ? "deposit" : random.nextInt(3) == 0 ? "withdraw" : "transfer";
+                    if (type.equals("transfer") && from == to) type = "deposit";
+
+                    Transaction tx = new Transaction(i, cents / 100.0, type,
+                            type.equals("deposit") ? null : from, type.equals("withdraw") ? null : to);
+                    long delta = type.equals("deposit") ? cents : type.equals("withdraw") ? -cents : 0;
+
+                    inFlight.acquire();
+                    engine.submit(tx).whenComplete((status, error) -> {
+                        if ("completed".equals(status)) netCents.addAndGet(delta);
+                        inFlight.release();
+                    });
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        inFlight.acquire(MAX_IN_FLIGHT);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        long endTotal = 0;
+        for (Account acc : accounts) {
+            endTotal += acc.getBalanceCents();
+        }
+
+        System.out.printf("%d transactions on %d accounts in %.2f s: %.0f tx/s (%s)%n",
+                total, accountCount, elapsed / 1e9, total / (elapsed / 1e9),
+                engine.usesVirtualThreads() ? "virtual threads" : "platform threads");
+        System.out.printf("completed %d, refused %d, failed %d%n",
+                engine.getCompleted(), engine.getRefused(), engine.getFailed());
+        boolean balanced = endTotal == startTotal + netCents.get();
+        System.out.println(balanced ? "Totals match" : "Totals differ: expected "
+                + Money.format(startTotal + netCents.get()) + ", found " + Money.format(endTotal));
+
+        engine.shutdown();
+        PersistencePipeline.getInstance().awaitDurable();
+        if (!balanced) System.exit(1);
+    }
+
+    private static Account[] createAccounts(DatabaseManager db, int count) {
+        Account[] accounts = new Account[count];
+        int firstId = Integer.parseInt(db.generateNextCustomerId());
+        for (int i = 0; i < count; i++) {
+            int id = firstId + i;
+            Customer customer = new Customer(id, "Load Test " + id, "pass" + id);
+            Account acc = new Checking(customer, START_CENTS / 100.0);
+            acc.setAccountNumber("LOAD" + id);
+            customer.addAccount(acc);
+            db.addCustomer(customer);
+            accounts[i] = acc;
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,249 @@
+package bank;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Imports deposits, withdrawals and transfers from an upstream file with the columns of
+// transactions.csv plus the target account:
+//
+//   transactionId,accountNumber,type,amount,status,timestamp,targetAccount
+//
+// accountNumber is the account a deposit goes to, or a withdrawal or transfer comes from;
+// targetAccount is only used by transfers. The status column is ignored.
+//
+// The file is streamed in chunks of CHUNK_ROWS rows. Chunks are parsed and validated on
+// all cores (accounts exist and are not FROZEN, amount positive, known type), while the
+// chunks before them are applied one at a time in file order through
+// TransactionEngine.applyBatch, which also persists each chunk in one go. At most
+// MAX_CHUNKS_IN_FLIGHT chunks are held in memory. Rows that fail validation, or fail when
+// applied (insufficient funds), go to the reject file in file order, padded to the seven
+// columns above with the reason appended, so the file can be fixed and imported again.
+//
+// Run:
+//   java -cp ".:libs/*" bank.TransactionImporter <file> [reject file]
+public class TransactionImporter {
+
+    public static final String HEADER = "transactionId,accountNumber,type,amount,status,timestamp,targetAccount";
+
+    private static final int COLUMNS = 7;
+    private static final int CHUNK_ROWS = 10_000;
+    private static final int MAX_CHUNKS_IN_FLIGHT = 2 * Runtime.getRuntime().availableProcessors() + 2;
+
+    private final DatabaseManager databaseManager;
+    private final TransactionEngine engine;
+
+    public TransactionImporter() {
+        this(DatabaseManager.getInstance(), TransactionEngine.getInstance());
+    }
+
+    TransactionImporter(DatabaseManager databaseManager, TransactionEngine engine) {
+        this.databaseManager = databaseManager;
+        this.engine = engine;
+    }
+
+    // One chunk of rows, then its validation results
+    private static class Chunk {
+        final List<String> rows;
+        final List<Transaction> valid = new ArrayList<>();
+        final List<Integer> validRows = new ArrayList<>();    // index in rows of each valid one
+        final List<Integer> rejectRows = new ArrayList<>();   // index in rows, ascending
+        final List<String> rejects = new ArrayList<>();       // padded row + "," + reason
+
+        Chunk(List<String> rows) {
+            this.rows = rows;
+        }
+    }
+
+    public ImportResult importFile(String file, String rejectFile) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        long applied = 0;
+        long rejected = 0;
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+
+        try (CsvTokenizer csv = new CsvTokenizer(new FileInputStream(file));
+             BufferedWriter rejects = Files.newBufferedWriter(Paths.get(rejectFile), StandardCharsets.UTF_8)) {
+            rejects.write(HEADER + ",reason");
+            rejects.newLine();
+
+            List<String> pending = new ArrayList<>(CHUNK_ROWS);
+            boolean first = true;
+            while (csv.nextRow()) {
+                if (first) {
+                    first = false;
+                    if (csv.fieldEquals(0, "transactionId")) continue;   // header
+                }
+                pending.add(csv.rowText().trim());
+                rows++;
+
+                if (pending.size() == CHUNK_ROWS) {
+                    Chunk chunk = new Chunk(pending);
+                    inFlight.add(pool.submit(() -> validate(chunk)));
+                    pending = new ArrayList<>(CHUNK_ROWS);
+
+                    // Apply the oldest chunk once the window is full, so memory stays bounded
+                    if (inFlight.size() >= MAX_CHUNKS_IN_FLIGHT) {
+                        long[] counts = apply(join(inFlight.poll()), rejects);
+                        applied += counts[0];
+                        rejected += counts[1];
+                    }
+                }
+            }
+            if (!pending.isEmpty()) {
+                Chunk chunk = new Chunk(pending);
+                inFlight.add(pool.submit(() -> validate(chunk)));
+            }
+
+            while (!inFlight.isEmpty()) {
+                long[] counts = apply(join(inFlight.poll()), rejects);
+                applied += counts[0];
+                rejected += counts[1];
+            }
+        } finally {
+            for (Future<Chunk> future : inFlight) {
+                future.cancel(false);
+            }
+        }
+
+        return new ImportResult(rows, applied, rejected, System.nanoTime() - start);
+    }
+
+    private static Chunk join(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Error validating rows", e.getCause());
+        }
+    }
+
+    // Runs on the pool: parse every row and check what can be checked without applying it
+    private Chunk validate(Chunk chunk) {
+        for (int i = 0; i < chunk.rows.size(); i++) {
+            String row = chunk.rows.get(i);
+            String[] fields = row.split(",", -1);
+            Transaction tx = new Transaction();
+            String reason = parse(fields, tx);
+            if (reason == null) {
+                chunk.valid.add(tx);
+                chunk.validRows.add(i);
+            } else {
+                chunk.rejectRows.add(i);
+                chunk.rejects.add(rejectLine(row, fields.length, reason));
+            }
+        }
+        return chunk;
+    }
+
+    // The row with empty columns added up to targetAccount, then the reason
+    private static String rejectLine(String row, int fields, String reason) {
+        StringBuilder line = new StringBuilder(row.length() + reason.length() + COLUMNS).append(row);
+        for (int i = fields; i < COLUMNS; i++) line.append(',');
+        return line.append(',').append(reason).toString();
+    }
+
+    // Fills tx from the row; returns why the row is rejected, or null
+    private String parse(String[] fields, Transaction tx) {
+        if (fields.length < 6) return "missing columns";
+
+        String type = fields[2].trim().toLowerCase(Locale.ROOT);
+        if (!type.equals("deposit") && !type.equals("withdraw") && !type.equals("transfer")) {
+            return "unknown type";
+        }
+        tx.setType(type);
+
+        try {
+            tx.setTransactionId(Integer.parseInt(fields[0].trim()));
+        } catch (NumberFormatException e) {
+            return "invalid transaction id";
+        }
+
+        double amount;
+        try {
+            amount = Double.parseDouble(fields[3].trim());
+        } catch (NumberFormatException e) {
+            return "invalid amount";
+        }
+        if (!(amount > 0) || Money.cents(amount) <= 0) return "amount must be positive";
+        tx.setAmount(amount);
+
+        String timestamp = fields[5].trim();
+        if (!timestamp.isEmpty()) {
+            try {
+                tx.setTimestamp(LocalDateTime.parse(timestamp));
+            } catch (DateTimeParseException e) {
+                return "invalid timestamp";
+            }
+        }
+
+        Account account = databaseManager.getAccountByNumber(fields[1].trim());
+        if (account == null) return "account not found";
+        if (account.getStatus().equals("FROZEN")) return "account is FROZEN";
+
+        switch (type) {
+            case "deposit":
+                tx.setTargetAccount(account);
+                break;
+            case "withdraw":
+                tx.setSourceAccount(account);
+                break;
+            default:
+                String targetNumber = fields.length > 6 ? fields[6].trim() : "";
+                if (targetNumber.isEmpty()) return "missing target account";
+                Account target = databaseManager.getAccountByNumber(targetNumber);
+                if (target == null) return "target account not found";
+                if (target == account) return "target is the source account";
+                if (target.getStatus().equals("FROZEN")) return "target account is FROZEN";
+                tx.setSourceAccount(account);
+                tx.setTargetAccount(target);
+        }
+        return null;
+    }
+
+    // On the importing thread, in file order. Returns {applied, rejected}.
+    private long[] apply(Chunk chunk, BufferedWriter rejects) throws IOException {
+        BatchResult result = engine.applyBatch(chunk.valid);
+
+        // Merge the rows refused by validation with those refused when applied, both
+        // ascending by row, so the reject file keeps the input order
+        int next = 0;
+        for (int i = 0; i < chunk.valid.size(); i++) {
+            if (result.isSucceeded(i)) continue;
+            int row = chunk.validRows.get(i);
+            for (; next < chunk.rejectRows.size() && chunk.rejectRows.get(next) < row; next++) {
+                rejects.write(chunk.rejects.get(next));
+                rejects.newLine();
+            }
+            String text = chunk.rows.get(row);
+            rejects.write(rejectLine(text, text.split(",", -1).length, result.getStatus(i)));
+            rejects.newLine();
+        }
+        for (; next < chunk.rejects.size(); next++) {
+            rejects.write(chunk.rejects.get(next));
+            rejects.newLine();
+        }
+        return new long[]{result.getSucceeded(), chunk.rejects.size() + result.getFailed()};
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TransactionImporter <file> [reject file]");
+            return;
+        }
+        String rejectFile = args.length > 1 ? args[1] : args[0] + ".rejects.csv";
+
+        ImportResult result = new TransactionImporter().importFile(args[0], rejectFile);
+        PersistencePipeline.getInstance().awaitDurable();
+        System.out.println(result);
+        if (result.getRejected() > 0) System.out.println("Rejected rows written to " + rejectFile);
+    }
+}
@@ -0,0 +1,130 @@
+package bank;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Checks that imported transactions can be found by time even when the upstream file is
+// not in timestamp order: imports ROWS deposits, the first half at shuffled seconds and then
+// a late batch of older ones in runs (like daily exports sent newest day first), each run
+// in order but older than everything before it. Runs start on TransactionTimeIndex block
+// boundaries, so index blocks keep opening with a new oldest row. It then asks
+// TransactionsDatabaseManager for a series of time windows (over all accounts and per
+// account) and compares with what the file holds. Exits with status 1 if a row is missing,
+// extra or has no account.
+//
+// Run in an empty directory: the rows are imported into the data files there (the sample
+// accounts are created on first start).
+//   java -cp ".:libs/*" bank.TransactionImporterCheck
+public class TransactionImporterCheck {
+
+    private static final int RUN_ROWS = 4 * TransactionTimeIndex.BLOCK_ROWS;
+    private static final int ROWS = 100 * RUN_ROWS;
+    private static final LocalDateTime BASE = LocalDateTime.of(2099, 1, 1, 0, 0);
+    private static final String[] ACCOUNTS = {"ACC101", "ACC103", "ACC201", "ACC301", "ACC302"};
+
+    public static void main(String[] args) throws IOException {
+        DatabaseManager db = DatabaseManager.getInstance();
+        List<String> accounts = new ArrayList<>();
+        for (String number : ACCOUNTS) {
+            Account acc = db.getAccountByNumber(number);
+            if (acc != null && !acc.getStatus().equals("FROZEN")) accounts.add(number);
+        }
+        if (accounts.isEmpty()) {
+            System.out.println("No sample accounts found, run this in an empty directory");
+            System.exit(1);
+        }
+
+        // Row i happens second[i] seconds after BASE: the newer half shuffled, then the older
+        // half in runs, newest run first
+        Random random = new Random(42);
+        int half = ROWS / 2;
+        int[] second = new int[ROWS];
+        for (int i = 0; i < half; i++) second[i] = half + i;
+        for (int i = half - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = second[i];
+            second[i] = second[j];
+            second[j] = t;
+        }
+        for (int i = half; i < ROWS; i++) {
+            int run = (i - half) / RUN_ROWS;
+            second[i] = half - (run + 1) * RUN_ROWS + (i - half) % RUN_ROWS;
+        }
+        String[] accountOf = new String[ROWS];
+
+        Path file = Files.createTempFile("import-check", ".csv");
+        Path rejects = Files.createTempFile("import-check", ".rejects.csv");
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                w.write(TransactionImporter.HEADER);
+                w.newLine();
+                for (int i = 0; i < ROWS; i++) {
+                    accountOf[i] = accounts.get(random.nextInt(accounts.size()));
+                    w.write(String.format("%d,%s,deposit,1.00,,%s,", 900_000_000 + i, accountOf[i],
+                            BASE.plusSeconds(second[i])));
+                    w.newLine();
+                }
+            }
+
+            ImportResult result = new TransactionImporter().importFile(file.toString(), rejects.toString());
+            System.out.println(result);
+            if (result.getApplied() != ROWS) {
+                System.out.println("Expected " + ROWS + " rows applied, see " + rejects);
+                System.exit(1);
+            }
+            PersistencePipeline.getInstance().awaitDurable();
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(rejects);
+        }
+
+        int failures = 0;
+        failures += expect(second, accountOf, null, 0, ROWS - 1);
+        failures += expect(second, accountOf, null, 0, 0);
+        failures += expect(second, accountOf, null, ROWS - 1, ROWS - 1);
+        for (int i = 0; i < 20; i++) {
+            int from = random.nextInt(ROWS);
+            int to = Math.min(ROWS - 1, from + random.nextInt(i % 2 == 0 ? 10 : 2000));
+            failures += expect(second, accountOf, null, from, to);
+            failures += expect(second, accountOf, accounts.get(i % accounts.size()), from, to);
+        }
+
+        System.out.println(failures == 0 ? "Time-range queries find every imported row" : failures + " checks failed");
+        if (failures != 0) System.exit(1);
+    }
+
+    // 1 if the transactions found between BASE+from and BASE+to seconds (of one account, or of
+    // all when accountNumber is null) are not exactly the imported rows in that window
+    private static int expect(int[] second, String[] accountOf, String accountNumber, int from, int to) {
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < second.length; i++) {
+            if (second[i] >= from && second[i] <= to && (accountNumber == null || accountNumber.equals(accountOf[i]))) {
+                expected.add(900_000_000 + i);
+            }
+        }
+
+        LocalDateTime start = BASE.plusSeconds(from);
+        LocalDateTime end = BASE.plusSeconds(to);
+        TransactionsDatabaseManager txDb = TransactionsDatabaseManager.getInstance();
+        List<Transaction> found = accountNumber == null ? txDb.loadTransactionsBetween(start, end)
+                : txDb.loadTransactionsBetween(accountNumber, start, end);
+
+        Set<Integer> ids = new HashSet<>();
+        int withoutAccount = 0;
+        for (Transaction tx : found) {
+            ids.add(tx.getTransactionId());
+            if (accountNumber == null && tx.getTargetAccount() == null) withoutAccount++;
+        }
+        if (ids.equals(expected) && found.size() == expected.size() && withoutAccount == 0) return 0;
+
+        Set<Integer> missing = new HashSet<>(expected);
+        missing.removeAll(ids);
+        System.out.println("Window " + start + " .. " + end + (accountNumber == null ? "" : " of " + accountNumber)
+                + ": expected " + expected.size() + ", found " + found.size() + ", missing " + missing.size()
+                + ", without account " + withoutAccount);
+        return 1;
+    }
+}
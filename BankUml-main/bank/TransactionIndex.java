@@ -0,0 +1,255 @@
+package bank;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+// Sidecar index for transactions.csv: account number -> (offset, length) of each of its rows,
+// plus a sparse time index (TransactionTimeIndex) for date-range queries.
+// Every append adds one "accountNumber,offset,length,timestamp" line to transactions.idx, and
+// the whole index is kept in memory, so finding one account's history never scans the CSV.
+//
+// The index is only a cache of the CSV. If the sidecar is missing, or describes bytes the
+// CSV doesn't have, it is rebuilt from the CSV; if it stops short of the end of the CSV
+// (e.g. a crash between the two writes) the missing tail is scanned and indexed.
+//
+// Sealed transaction segments never change, so their index is opened read-only: the
+// sidecar is written once if it has to be rebuilt and no writer is kept open afterwards.
+public class TransactionIndex implements Closeable {
+
+    private final Path dataFile;
+    private final Path indexFile;
+
+    // accountNumber -> offset/length pairs, sorted by offset
+    private final Map<String, LongList> rows = new HashMap<>();
+    private long coveredEnd;   // every CSV byte before this is indexed
+
+    private final TransactionTimeIndex timeIndex = new TransactionTimeIndex();
+
+    // Rows without a readable timestamp are left out of the time index
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private GroupCommitWriter writer;
+
+    public TransactionIndex(String dataFile, String indexFile) throws IOException {
+        this(dataFile, indexFile, true);
+    }
+
+    // Index of a sealed (immutable) segment
+    public static TransactionIndex openSealed(String dataFile, String indexFile) throws IOException {
+        return new TransactionIndex(dataFile, indexFile, false);
+    }
+
+    private TransactionIndex(String dataFile, String indexFile, boolean writable) throws IOException {
+        this.dataFile = Paths.get(dataFile);
+        this.indexFile = Paths.get(indexFile);
+
+        long dataSize = Files.size(this.dataFile);
+        boolean usable = Files.exists(this.indexFile) && loadSidecar()
+                && coveredEnd <= dataSize && endsRow(coveredEnd);
+
+        if (!usable) {
+            System.out.println("Rebuilding " + indexFile + " from " + dataFile + "...");
+            rows.clear();
+            timeIndex.clear();
+            coveredEnd = 0;
+            Files.deleteIfExists(this.indexFile);
+        }
+
+        // Sidecar is only a cache, so the OS page cache is durable enough
+        writer = new GroupCommitWriter(indexFile, GroupCommitWriter.Durability.OS, 1000);
+
+        if (coveredEnd < dataSize) {
+            indexTail(coveredEnd);
+        }
+
+        if (!writable) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private boolean loadSidecar() {
+        try (CsvTokenizer csv = new CsvTokenizer(Files.newInputStream(indexFile))) {
+            while (csv.nextRow()) {
+                // Sidecars from before the time index have no timestamp column: rebuild them
+                if (csv.fieldCount() < 4) return false;
+
+                long offset = csv.getLong(1);
+                int length = csv.getInt(2);
+                put(csv.getString(0), offset, length, csv.getLong(3));
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Unreadable transaction index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Cheap sanity check that the sidecar matches this CSV: indexed data ends on a line break
+    private boolean endsRow(long offset) throws IOException {
+        if (offset == 0) return true;
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            java.nio.ByteBuffer b = java.nio.ByteBuffer.allocate(1);
+            return channel.read(b, offset - 1) == 1 && b.get(0) == '\n';
+        }
+    }
+
+    // Index every CSV row starting at 'from' (0 means the file still has its header)
+    private void indexTail(long from) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ);
+             CsvTokenizer csv = new CsvTokenizer(Channels.newInputStream(channel.position(from)))) {
+
+            if (from == 0) csv.nextRow(); // skip header
+
+            while (csv.nextRow()) {
+                if (csv.fieldCount() < 2) continue;
+                add(csv.getString(1), from + csv.rowOffset(), csv.rowLength(), timestampOf(csv));
+            }
+        }
+        coveredEnd = Math.max(coveredEnd, Files.size(dataFile));
+    }
+
+    private static long timestampOf(CsvTokenizer csv) {
+        if (csv.fieldCount() < 6) return NO_TIMESTAMP;
+        try {
+            return TransactionTimeIndex.key(LocalDateTime.parse(csv.getString(5)));
+        } catch (DateTimeParseException e) {
+            return NO_TIMESTAMP;
+        }
+    }
+
+    // Record one appended CSV row
+    public synchronized void add(String accountNumber, long offset, int length, long timestamp) {
+        put(accountNumber, offset, length, timestamp);
+        if (writer == null) return;
+
+        try {
+            writer.append((accountNumber + "," + offset + "," + length + "," + timestamp + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.out.println("Error writing transaction index: " + e.getMessage());
+        }
+    }
+
+    private void put(String accountNumber, long offset, int length, long timestamp) {
+        rows.computeIfAbsent(accountNumber, k -> new LongList()).insertSorted(offset, length);
+        if (timestamp != NO_TIMESTAMP) timeIndex.add(offset, timestamp);
+        coveredEnd = Math.max(coveredEnd, offset + length);
+    }
+
+    // Every account number with at least one row
+    public synchronized Set<String> accountNumbers() {
+        return new HashSet<>(rows.keySet());
+    }
+
+    // Byte range [start, end) of the CSV holding every row timestamped in [from, to], or null
+    public long[] timeRange(LocalDateTime from, LocalDateTime to) {
+        return timeIndex.byteRange(TransactionTimeIndex.key(from), TransactionTimeIndex.key(to));
+    }
+
+    // Offset/length pairs of the account's rows with start <= offset < end, oldest first
+    public synchronized long[] findBetween(String accountNumber, long start, long end) {
+        LongList list = rows.get(accountNumber);
+        return list == null ? new long[0] : list.between(start, end);
+    }
+
+    // Offset/length pairs of every row for the account, oldest first: [off0, len0, off1, len1, ...]
+    public synchronized long[] find(String accountNumber) {
+        LongList list = rows.get(accountNumber);
+        return list == null ? new long[0] : list.toArray();
+    }
+
+    // Up to 'max' rows of the account with offset <= maxOffset, newest first.
+    // Only the slice is copied, so paging through a huge history uses bounded memory.
+    public synchronized long[] findNewest(String accountNumber, long maxOffset, int max) {
+        LongList list = rows.get(accountNumber);
+        if (list == null) return new long[0];
+        return list.newestAtOrBefore(maxOffset, max);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) writer.close();
+        writer = null;
+    }
+
+    // Growable list of (offset, length) pairs stored flat in a long[]
+    static class LongList {
+        private long[] data = new long[8];
+        private int size;
+
+        // Rows usually arrive in file order; concurrent appends can land slightly out of order
+        void insertSorted(long offset, long length) {
+            if (size + 2 > data.length) data = Arrays.copyOf(data, data.length * 2);
+
+            int i = size;
+            while (i > 0 && data[i - 2] > offset) {
+                data[i] = data[i - 2];
+                data[i + 1] = data[i - 1];
+                i -= 2;
+            }
+            if (i > 0 && data[i - 2] == offset) {
+                // Already indexed (e.g. sidecar and tail scan overlap)
+                System.arraycopy(data, i + 2, data, i, size - i);
+                return;
+            }
+            data[i] = offset;
+            data[i + 1] = length;
+            size += 2;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+
+        // Pairs with start <= offset < end, oldest first
+        long[] between(long start, long end) {
+            int from = firstAtOrAfter(start);
+            int to = firstAtOrAfter(end);
+            return Arrays.copyOfRange(data, from * 2, to * 2);
+        }
+
+        // Index of the first pair with offset >= value
+        private int firstAtOrAfter(long value) {
+            int lo = 0;
+            int hi = size / 2;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (data[mid * 2] < value) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        // Pairs with offset <= maxOffset, newest first, at most 'max' of them
+        long[] newestAtOrBefore(long maxOffset, int max) {
+            // Binary search for the last pair with offset <= maxOffset
+            int lo = 0;
+            int hi = size / 2 - 1;
+            int last = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (data[mid * 2] <= maxOffset) {
+                    last = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+
+            int count = Math.min(max, last + 1);
+            long[] result = new long[count * 2];
+            for (int i = 0; i < count; i++) {
+                result[i * 2] = data[(last - i) * 2];
+                result[i * 2 + 1] = data[(last - i) * 2 + 1];
+            }
+            return result;
+        }
+    }
+}
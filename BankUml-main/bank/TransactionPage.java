@@ -0,0 +1,22 @@
+package bank;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// One page of an account's history, newest first.
+// Pass nextToken back to get the next (older) page; it is null on the last page.
+@Getter
+public class TransactionPage {
+    private final List<Transaction> transactions;
+    private final String nextToken;
+
+    public TransactionPage(List<Transaction> transactions, String nextToken) {
+        this.transactions = transactions;
+        this.nextToken = nextToken;
+    }
+
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+}
@@ -0,0 +1,164 @@
+package bank;
+
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+// One file of the segmented transaction log.
+// The active segment is transactions.csv, still being appended to; its index is live and
+// rows are read back through a FileChannel. Sealed segments (transactions-000001.csv, ...)
+// never change again, so they are memory-mapped, their index is loaded only when a query
+// gets past the Bloom filter, and the loaded index can be dropped under memory pressure.
+public class TransactionSegment implements Closeable {
+
+    private final int id;
+    private final Path dataFile;
+    private final Path indexFile;
+
+    // Active segment only
+    private final TransactionIndex activeIndex;
+    private final FileChannel reader;
+
+    // Sealed segments only
+    private final BloomFilter bloom;
+    private SoftReference<TransactionIndex> sealedIndex = new SoftReference<>(null);
+    private MappedByteBuffer mapped;
+
+    private TransactionSegment(int id, Path dataFile, Path indexFile, TransactionIndex activeIndex,
+                               FileChannel reader, BloomFilter bloom) {
+        this.id = id;
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.activeIndex = activeIndex;
+        this.reader = reader;
+        this.bloom = bloom;
+    }
+
+    public static TransactionSegment active(int id, String dataFile, TransactionIndex index) throws IOException {
+        Path data = Paths.get(dataFile);
+        return new TransactionSegment(id, data, null, index, FileChannel.open(data, StandardOpenOption.READ), null);
+    }
+
+    // Opens a sealed segment, rebuilding its index sidecar or Bloom filter if missing
+    public static TransactionSegment sealed(int id, Path dataFile, Path indexFile, Path bloomFile) throws IOException {
+        BloomFilter bloom = null;
+        if (Files.exists(bloomFile)) {
+            try {
+                bloom = BloomFilter.readFrom(bloomFile);
+            } catch (IOException e) {
+                System.out.println("Unreadable bloom filter " + bloomFile + ": " + e.getMessage());
+            }
+        }
+
+        TransactionIndex index = null;
+        if (bloom == null) {
+            System.out.println("Rebuilding " + bloomFile + "...");
+            index = TransactionIndex.openSealed(dataFile.toString(), indexFile.toString());
+            bloom = bloomFor(index);
+            bloom.writeTo(bloomFile);
+        }
+
+        TransactionSegment segment = new TransactionSegment(id, dataFile, indexFile, null, null, bloom);
+        segment.sealedIndex = new SoftReference<>(index);
+        return segment;
+    }
+
+    // Wraps a segment that was just sealed, reusing the index that was built while it was active
+    static TransactionSegment justSealed(int id, Path dataFile, Path indexFile, TransactionIndex index,
+                                         BloomFilter bloom) {
+        TransactionSegment segment = new TransactionSegment(id, dataFile, indexFile, null, null, bloom);
+        segment.sealedIndex = new SoftReference<>(index);
+        return segment;
+    }
+
+    // 1% false positives: a lookup for an absent account opens about one segment in a hundred
+    static BloomFilter bloomFor(TransactionIndex index) {
+        java.util.Set<String> accounts = index.accountNumbers();
+        BloomFilter bloom = BloomFilter.create(accounts.size(), 0.01);
+        for (String accountNumber : accounts) {
+            bloom.add(accountNumber);
+        }
+        return bloom;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Path getDataFile() {
+        return dataFile;
+    }
+
+    public boolean isSealed() {
+        return activeIndex == null;
+    }
+
+    // False means the segment has no rows for the account
+    public boolean mightContain(String accountNumber) {
+        return bloom == null || bloom.mightContain(accountNumber);
+    }
+
+    public synchronized TransactionIndex index() throws IOException {
+        if (activeIndex != null) return activeIndex;
+
+        TransactionIndex index = sealedIndex.get();
+        if (index == null) {
+            index = TransactionIndex.openSealed(dataFile.toString(), indexFile.toString());
+            sealedIndex = new SoftReference<>(index);
+        }
+        return index;
+    }
+
+    // Read the given offset/length pairs back to back into one buffer
+    public byte[] readRows(long[] rows) throws IOException {
+        int total = 0;
+        for (int i = 1; i < rows.length; i += 2) total += (int) rows[i];
+        byte[] out = new byte[total];
+
+        if (isSealed()) {
+            ByteBuffer map = mapped();
+            int pos = 0;
+            for (int i = 0; i < rows.length; i += 2) {
+                long offset = rows[i];
+                int length = (int) rows[i + 1];
+                if (offset + length > map.capacity()) {
+                    throw new EOFException("Transaction row past end of " + dataFile + " at " + offset);
+                }
+                // Absolute reads on a duplicate, so concurrent readers don't share a position
+                map.duplicate().position((int) offset).get(out, pos, length);
+                pos += length;
+            }
+            return out;
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(out);
+        for (int i = 0; i < rows.length; i += 2) {
+            long offset = rows[i];
+            int stop = buf.position() + (int) rows[i + 1];
+            buf.limit(stop);
+            while (buf.position() < stop) {
+                int n = reader.read(buf, offset);
+                if (n < 0) throw new EOFException("Transaction row past end of file at " + offset);
+                offset += n;
+            }
+        }
+        return out;
+    }
+
+    private synchronized ByteBuffer mapped() throws IOException {
+        if (mapped == null) {
+            try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        return mapped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) reader.close();
+    }
+}
@@ -0,0 +1,39 @@
+package bank;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Where TransactionsDatabaseManager keeps transaction history. Picked with -Dbank.storage
+// (see StorageConfig). save() runs on the persistence pipeline thread; the manager flushes
+// the pipeline before every query, so a store only sees reads after the writes before them.
+public interface TransactionStore {
+
+    // Record a transaction under the account it belongs to. tx is a private copy with
+    // a timestamp and without account references.
+    void save(String accountNumber, Transaction tx);
+
+    // Record several transactions at once; accountNumbers.get(i) is the account of txs.get(i).
+    // Stores that can write them in one go override this.
+    default void saveAll(List<String> accountNumbers, List<Transaction> txs) {
+        for (int i = 0; i < txs.size(); i++) {
+            save(accountNumbers.get(i), txs.get(i));
+        }
+    }
+
+    // All transactions of one account, oldest first
+    List<Transaction> loadForAccount(String accountNumber);
+
+    // Newest-first page; token is null for the first page, then the previous page's nextToken
+    TransactionPage loadPage(String accountNumber, int pageSize, String token);
+
+    // Every transaction with from <= timestamp <= to, with the account number it was saved under
+    List<SavedTransaction> loadBetween(LocalDateTime from, LocalDateTime to);
+
+    // One account's transactions with from <= timestamp <= to, oldest first
+    List<Transaction> loadBetween(String accountNumber, LocalDateTime from, LocalDateTime to);
+
+    // Force everything saved so far to disk
+    void sync();
+
+    void close();
+}
@@ -0,0 +1,131 @@
+package bank;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+// Sparse time index over an append-only transactions file.
+// Rows are grouped into blocks of BLOCK_ROWS consecutive rows; for each block we keep its
+// first byte offset plus two running bounds that are sorted by construction:
+//   prefixMax[i] = newest timestamp in blocks 0..i   (never decreases with i)
+//   suffixMin[i] = oldest timestamp in blocks i..end (never decreases with i)
+// so the blocks that can hold a time window are found with two binary searches, even though
+// concurrent writers can append rows slightly out of timestamp order.
+public class TransactionTimeIndex {
+
+    public static final int BLOCK_ROWS = 64;
+
+    private long[] blockStart = new long[16];
+    private long[] prefixMax = new long[16];
+    private long[] suffixMin = new long[16];
+    private int[] blockRows = new int[16];
+    private int blocks;
+    private long lastOffset = -1;
+
+    // Sortable key for a timestamp (nanoseconds since the epoch, zone-less)
+    public static long key(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+    }
+
+    public synchronized void add(long offset, long timestamp) {
+        int block;
+        if (blocks == 0 || (offset > lastOffset && blockRows[blocks - 1] >= BLOCK_ROWS)) {
+            block = newBlock(offset, timestamp);
+        } else {
+            block = blockFor(offset);
+        }
+        lastOffset = Math.max(lastOffset, offset);
+        blockRows[block]++;
+
+        // Raise prefixMax from this block forward while it changes
+        for (int i = block; i < blocks; i++) {
+            long bound = Math.max(i == 0 ? Long.MIN_VALUE : prefixMax[i - 1], prefixMax[i]);
+            bound = i == block ? Math.max(bound, timestamp) : bound;
+            if (i > block && bound == prefixMax[i]) break;
+            prefixMax[i] = bound;
+        }
+
+        // Lower suffixMin from this block backward while it changes (almost always 0 steps).
+        // A new block already starts at this timestamp, so the earlier blocks are checked
+        // whether or not this one changed.
+        if (suffixMin[block] > timestamp) suffixMin[block] = timestamp;
+        for (int i = block - 1; i >= 0 && suffixMin[i] > timestamp; i--) {
+            suffixMin[i] = timestamp;
+        }
+    }
+
+    private int newBlock(long offset, long timestamp) {
+        if (blocks == blockStart.length) {
+            int n = blocks * 2;
+            blockStart = Arrays.copyOf(blockStart, n);
+            prefixMax = Arrays.copyOf(prefixMax, n);
+            suffixMin = Arrays.copyOf(suffixMin, n);
+            blockRows = Arrays.copyOf(blockRows, n);
+        }
+        blockStart[blocks] = offset;
+        prefixMax[blocks] = blocks == 0 ? timestamp : Math.max(prefixMax[blocks - 1], timestamp);
+        suffixMin[blocks] = timestamp;
+        return blocks++;
+    }
+
+    // Last block starting at or before the offset (a late row belongs to an earlier block)
+    private int blockFor(long offset) {
+        int lo = 0;
+        int hi = blocks - 1;
+        int found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockStart[mid] <= offset) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (offset < blockStart[found]) blockStart[found] = offset;
+        return found;
+    }
+
+    // Byte range [start, end) of the file that holds every row with from <= timestamp <= to,
+    // or null if no row can match. Rows inside the range still need to be filtered.
+    public synchronized long[] byteRange(long from, long to) {
+        if (blocks == 0 || from > to) return null;
+
+        // First block whose prefixMax >= from
+        int lo = 0;
+        int hi = blocks - 1;
+        int first = blocks;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prefixMax[mid] >= from) {
+                first = mid;
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        // Last block whose suffixMin <= to
+        lo = 0;
+        hi = blocks - 1;
+        int last = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (suffixMin[mid] <= to) {
+                last = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        if (first > last) return null;
+        long end = last + 1 < blocks ? blockStart[last + 1] : Long.MAX_VALUE;
+        return new long[]{blockStart[first], end};
+    }
+
+    public synchronized void clear() {
+        blocks = 0;
+        lastOffset = -1;
+    }
+}
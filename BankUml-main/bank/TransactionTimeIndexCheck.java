@@ -0,0 +1,48 @@
+package bank;
+
+// Checks that TransactionTimeIndex finds rows appended out of timestamp order: a full block
+// of rows, then one row older than all of them that opens a new block, then a late row that
+// lands in an older block. Exits with status 1 if a row is missed.
+//
+// Run:
+//   java -cp ".:libs/*" bank.TransactionTimeIndexCheck
+public class TransactionTimeIndexCheck {
+
+    private static final int ROW_BYTES = 100;
+
+    public static void main(String[] args) {
+        int failures = 0;
+
+        TransactionTimeIndex index = new TransactionTimeIndex();
+        long offset = 0;
+        for (int i = 0; i < TransactionTimeIndex.BLOCK_ROWS; i++) {
+            index.add(offset, 1000 + i);
+            offset += ROW_BYTES;
+        }
+        long lateOffset = offset;
+        index.add(lateOffset, 50);                 // opens block 1, older than all of block 0
+        failures += expect(index, 40, 60, lateOffset);
+        failures += expect(index, 1000, 1000, 0);
+
+        for (int i = 0; i < 3 * TransactionTimeIndex.BLOCK_ROWS; i++) {
+            offset += ROW_BYTES;
+            index.add(offset, 2000 + i);
+        }
+        offset += ROW_BYTES;
+        index.add(offset, 10);                     // a new block again, older than everything
+        failures += expect(index, 0, 20, offset);
+        failures += expect(index, 40, 60, lateOffset);
+
+        System.out.println(failures == 0 ? "Time index finds out-of-order rows" : failures + " checks failed");
+        if (failures != 0) System.exit(1);
+    }
+
+    // 1 if the byte range for [from, to] doesn't cover the row at 'offset'
+    private static int expect(TransactionTimeIndex index, long from, long to, long offset) {
+        long[] range = index.byteRange(from, to);
+        if (range != null && range[0] <= offset && offset < range[1]) return 0;
+        System.out.println("Range [" + from + ", " + to + "] misses the row at offset " + offset + ": "
+                + (range == null ? "null" : range[0] + ".." + range[1]));
+        return 1;
+    }
+}
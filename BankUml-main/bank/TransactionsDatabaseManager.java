@@ -1,25 +1,30 @@
 package bank;
 
-import java.io.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+// Transaction history. Saves go through the persistence pipeline to a TransactionStore
+// (SegmentedTransactionStore unless -Dbank.storage=memory, see StorageConfig); every query
+// first waits for the saves queued before it.
 public class TransactionsDatabaseManager {
 
     private static TransactionsDatabaseManager instance;
-    private final String CSV_FILE = "transactions.csv";
+    private static final int STREAM_PAGE_SIZE = 256;
+
+    private final TransactionStore store;
+    private final PersistencePipeline pipeline = PersistencePipeline.getInstance();
 
     private TransactionsDatabaseManager() {
-        try {
-            File file = new File(CSV_FILE);
-            if (!file.exists()) {
-                PrintWriter writer = new PrintWriter(new FileWriter(CSV_FILE));
-                writer.println("transactionId,accountNumber,type,amount,status,timestamp");
-                writer.close();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        this(StorageConfig.transactionStore());
+    }
+
+    TransactionsDatabaseManager(TransactionStore store) {
+        this.store = store;
+        // Transactions still queued in the pipeline are written before the store is closed
+        pipeline.addShutdownHook(store::close);
+        pipeline.addSyncHook(store::sync);
     }
 
     public static synchronized TransactionsDatabaseManager getInstance() {
@@ -29,63 +34,128 @@ public class TransactionsDatabaseManager {
         return instance;
     }
 
+    // Queues the transaction on the persistence pipeline and returns; use sync() or
+    // PersistencePipeline.awaitDurable() to wait until it is on disk
     public void saveTransaction(Transaction tx) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(CSV_FILE, true))) {
-
-            String accountNumber = tx.getSourceAccount() != null ?
-                    tx.getSourceAccount().getAccountNumber() :
-                    tx.getTargetAccount().getAccountNumber();
-
-            writer.println(String.format(
-                    "%d,%s,%s,%.2f,%s,%s",
-                    tx.getTransactionId(),
-                    accountNumber,
-                    tx.getType(),
-                    tx.getAmount(),
-                    tx.getStatus(),
-                    LocalDateTime.now()
-            ));
-
-        } catch (IOException e) {
-            System.out.println("Error saving transaction: " + e.getMessage());
+        String accountNumber = accountOf(tx);
+        Transaction snapshot = snapshot(tx);
+        pipeline.submit(() -> store.save(accountNumber, snapshot));
+    }
+
+    // Like saveTransaction for each, but queued as one write (see TransactionStore.saveAll)
+    public void saveTransactions(List<Transaction> txs) {
+        if (txs.isEmpty()) return;
+
+        List<String> accountNumbers = new ArrayList<>(txs.size());
+        List<Transaction> snapshots = new ArrayList<>(txs.size());
+        for (Transaction tx : txs) {
+            accountNumbers.add(accountOf(tx));
+            snapshots.add(snapshot(tx));
         }
+        pipeline.submit(() -> store.saveAll(accountNumbers, snapshots));
     }
 
-    // Load all transactions for one account
-    public List<Transaction> loadTransactionsForAccount(String accountNumber) {
-        List<Transaction> list = new ArrayList<>();
+    private static String accountOf(Transaction tx) {
+        return tx.getSourceAccount() != null ?
+                tx.getSourceAccount().getAccountNumber() :
+                tx.getTargetAccount().getAccountNumber();
+    }
+
+    // Copy now: the caller may keep changing tx after this returns.
+    // Persist when the transaction happened, not when it reached the store.
+    private static Transaction snapshot(Transaction tx) {
+        Transaction snapshot = new Transaction(tx.getTransactionId(), tx.getAmount(), tx.getType(), null, null);
+        snapshot.setStatus(tx.getStatus());
+        snapshot.setTimestamp(tx.getTimestamp() != null ? tx.getTimestamp() : LocalDateTime.now());
+        return snapshot;
+    }
+
+    // Block until every saved transaction is on disk
+    public void sync() {
+        pipeline.flush();
+        store.sync();
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(CSV_FILE))) {
+    public void close() {
+        pipeline.flush();
+        store.close();
+    }
 
-            String line;
-            boolean first = true;
+    // Load all transactions for one account, oldest first
+    public List<Transaction> loadTransactionsForAccount(String accountNumber) {
+        pipeline.flush();
+        return store.loadForAccount(accountNumber);
+    }
 
-            while ((line = br.readLine()) != null) {
+    // Newest-first page of at most pageSize transactions.
+    // Pass null for the first page, then the nextToken of the previous page. Tokens stay
+    // valid while new transactions are saved.
+    public TransactionPage loadTransactionPage(String accountNumber, int pageSize, String token) {
+        pipeline.flush();
+        return store.loadPage(accountNumber, pageSize, token);
+    }
 
-                if (first) {
-                    first = false;
-                    continue; // skip header
-                }
+    // Every transaction with from <= timestamp <= to, in the order they were saved, with the
+    // account it was saved under attached (as target of a deposit, source otherwise)
+    public List<Transaction> loadTransactionsBetween(LocalDateTime from, LocalDateTime to) {
+        pipeline.flush();
+        List<SavedTransaction> saved = store.loadBetween(from, to);
+
+        // Each account is looked up once, however many of its rows the window holds
+        DatabaseManager db = DatabaseManager.getInstance();
+        Map<String, Account> accounts = new HashMap<>();
+        List<Transaction> list = new ArrayList<>(saved.size());
+        for (SavedTransaction s : saved) {
+            Transaction tx = s.getTransaction();
+            Account account = accounts.computeIfAbsent(s.getAccountNumber(), db::getAccountByNumber);
+            if (tx.getType().equalsIgnoreCase("deposit")) {
+                tx.setTargetAccount(account);
+            } else {
+                tx.setSourceAccount(account);
+            }
+            list.add(tx);
+        }
+        return list;
+    }
 
-                String[] row = line.split(",");
+    // One account's transactions with from <= timestamp <= to, oldest first
+    public List<Transaction> loadTransactionsBetween(String accountNumber, LocalDateTime from, LocalDateTime to) {
+        pipeline.flush();
+        return store.loadBetween(accountNumber, from, to);
+    }
 
-                if (!row[1].equals(accountNumber)) continue;
+    // Lazily reads the account's history newest first, one page at a time
+    public Stream<Transaction> streamTransactionsForAccount(String accountNumber) {
+        Iterator<Transaction> it = new PageIterator(accountNumber);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
 
-                int txId = Integer.parseInt(row[0]);
-                String type = row[2];
-                double amount = Double.parseDouble(row[3]);
-                String status = row[4];
+    private class PageIterator implements Iterator<Transaction> {
+        private final String accountNumber;
+        private Iterator<Transaction> current = Collections.emptyIterator();
+        private String token;
+        private boolean lastPage;
 
-                Transaction tx = new Transaction(txId, amount, type, null, null);
-                tx.setStatus(status);
+        PageIterator(String accountNumber) {
+            this.accountNumber = accountNumber;
+        }
 
-                list.add(tx);
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && !lastPage) {
+                TransactionPage page = loadTransactionPage(accountNumber, STREAM_PAGE_SIZE, token);
+                current = page.getTransactions().iterator();
+                token = page.getNextToken();
+                lastPage = token == null;
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
+            return current.hasNext();
         }
 
-        return list;
+        @Override
+        public Transaction next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return current.next();
+        }
     }
 }
@@ -0,0 +1,111 @@
+package bank;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Commit records for transfers between shards (ShardedAccountStore), one "COMMIT,<id>" line
+// per transfer. A transfer writes its GROUP record to both shards' logs and fsyncs them, then
+// commits here; replay applies a transfer's GROUP records only if this log has its id. So a
+// crash before the commit loses both legs, and after it keeps both.
+//
+// When every shard has checkpointed, the log is moved to <file>.prev and a new one started:
+// the shards' set-aside logs can still hold GROUP records that were committed in it.
+public class TransferLog {
+
+    private static final String COMMIT = "COMMIT";
+    private static final String PREVIOUS = ".prev";
+
+    private final String file;
+    private final String sessionPrefix = Long.toString(System.currentTimeMillis(), 36) + ".";
+    private long nextId;
+
+    // Guarded by 'this'
+    private Set<String> committed;
+    private Set<String> previous;
+    private FileOutputStream out;
+    private PrintWriter writer;
+
+    public TransferLog(String file) {
+        this.file = file;
+        this.previous = read(file + PREVIOUS);
+        this.committed = read(file);
+        open();
+    }
+
+    private void open() {
+        try {
+            out = new FileOutputStream(file, true);
+            writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+        } catch (IOException e) {
+            System.out.println("Error opening transfer log: " + e.getMessage());
+        }
+    }
+
+    private static Set<String> read(String file) {
+        Set<String> ids = new HashSet<>();
+        if (!new File(file).exists()) return ids;
+
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] row = line.split(",");
+                if (row.length == 2 && row[0].equals(COMMIT)) ids.add(row[1]);
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading transfer log: " + e.getMessage());
+        }
+        return ids;
+    }
+
+    // An id no other transfer (in this run or an earlier one) has used
+    public synchronized String newId() {
+        return sessionPrefix + nextId++;
+    }
+
+    // The commit point: once this returns the transfer survives a crash
+    public synchronized void commit(String id) throws IOException {
+        if (writer == null) throw new IOException("Transfer log is not open");
+        writer.println(COMMIT + "," + id);
+        writer.flush();
+        if (writer.checkError()) throw new IOException("Error writing transfer log");
+        out.getFD().sync();
+        committed.add(id);
+    }
+
+    public synchronized boolean isCommitted(String id) {
+        return committed.contains(id) || previous.contains(id);
+    }
+
+    // Called after every shard has checkpointed
+    public synchronized void rotate() throws IOException {
+        close();
+        try {
+            if (Files.exists(Paths.get(file))) {
+                Files.move(Paths.get(file), Paths.get(file + PREVIOUS), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            previous = committed;
+            committed = new HashSet<>();
+        } finally {
+            open();
+        }
+    }
+
+    public synchronized void sync() {
+        if (writer == null) return;
+        try {
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            System.out.println("Error syncing transfer log: " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}